@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import static org.apache.maven.artifact.Artifact.LATEST_VERSION;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fedoraproject.maven.benchmarks.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.impl.ArtifactResolver;
+import org.sonatype.aether.impl.internal.DefaultRepositorySystem;
+import org.sonatype.aether.impl.internal.SimpleLocalRepositoryManager;
+import org.sonatype.aether.resolution.ArtifactDescriptorException;
+import org.sonatype.aether.resolution.ArtifactDescriptorRequest;
+import org.sonatype.aether.resolution.ArtifactDescriptorResult;
+import org.sonatype.aether.resolution.ArtifactRequest;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
+import org.sonatype.aether.resolution.ArtifactResult;
+import org.sonatype.aether.util.DefaultRepositorySystemSession;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+import org.sonatype.aether.util.artifact.DefaultArtifactTypeRegistry;
+import org.sonatype.aether.util.repository.DefaultAuthenticationSelector;
+import org.sonatype.aether.util.repository.DefaultMirrorSelector;
+import org.sonatype.aether.util.repository.DefaultProxySelector;
+
+/**
+ * The fallback machinery of {@link FossRepositorySystem}: resolving an
+ * artifact and reading its descriptor when only the given stage has it.
+ * Maven is replaced by stubs answering at once, so what is measured is the
+ * cost of FRE itself, including the stages that fail before the one that
+ * succeeds. With the session cache scope the failures of the earlier stages
+ * are remembered after the first call, as in a long build; with none every
+ * call goes through all of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class FossRepositorySystemBenchmark {
+    @Param({ "EXACT", "LATEST", "JPP" })
+    String stage;
+
+    @Param({ "session", "none" })
+    String cacheScope;
+
+    private File dir;
+
+    private FossRepositorySystem repositorySystem;
+
+    private RepositorySystemSession session;
+
+    private ArtifactRequest artifactRequest;
+
+    private ArtifactDescriptorRequest descriptorRequest;
+
+    /**
+     * @return the stage the request was made by
+     */
+    private static ResolutionStage stageOf(
+            final RepositorySystemSession session,
+            final Artifact artifact) {
+
+        if (session.getLocalRepositoryManager()
+                instanceof JPPLocalRepositoryManager) {
+            return ResolutionStage.JPP;
+        }
+        return LATEST_VERSION.equals(artifact.getVersion())
+                ? ResolutionStage.LATEST
+                : ResolutionStage.EXACT;
+    }
+
+    private class StubArtifactResolver implements ArtifactResolver {
+        @Override
+        public ArtifactResult resolveArtifact(
+                RepositorySystemSession session,
+                ArtifactRequest request)
+                throws ArtifactResolutionException {
+
+            final ArtifactResult result = new ArtifactResult(request);
+            if (stageOf(session, request.getArtifact())
+                    != ResolutionStage.valueOf(stage)) {
+                throw new ArtifactResolutionException(
+                        Collections.singletonList(result));
+            }
+            return result.setArtifact(request.getArtifact());
+        }
+
+        @Override
+        public List<ArtifactResult> resolveArtifacts(
+                RepositorySystemSession session,
+                Collection<? extends ArtifactRequest> requests)
+                throws ArtifactResolutionException {
+
+            final List<ArtifactResult> results =
+                    new ArrayList<ArtifactResult>(requests.size());
+            for (ArtifactRequest request : requests) {
+                results.add(resolveArtifact(session, request));
+            }
+            return results;
+        }
+    }
+
+    private class StubRepositorySystem extends DefaultRepositorySystem {
+        @Override
+        public ArtifactDescriptorResult readArtifactDescriptor(
+                RepositorySystemSession session,
+                ArtifactDescriptorRequest request)
+                throws ArtifactDescriptorException {
+
+            final ArtifactDescriptorResult result =
+                    new ArtifactDescriptorResult(request);
+            if (stageOf(session, request.getArtifact())
+                    != ResolutionStage.valueOf(stage)) {
+                throw new ArtifactDescriptorException(result);
+            }
+            return result.setArtifact(request.getArtifact());
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        dir = TemporaryDirectory.create("local");
+        session = new DefaultRepositorySystemSession()
+                .setLocalRepositoryManager(
+                        new SimpleLocalRepositoryManager(dir))
+                .setMirrorSelector(new DefaultMirrorSelector())
+                .setProxySelector(new DefaultProxySelector())
+                .setAuthenticationSelector(new DefaultAuthenticationSelector())
+                .setArtifactTypeRegistry(new DefaultArtifactTypeRegistry());
+
+        repositorySystem = new FossRepositorySystem()
+                .setDefaultRepositorySystem(new StubRepositorySystem())
+                .setArtifactResolver(new StubArtifactResolver())
+                .setUseJpp(true)
+                .setCacheScope(cacheScope);
+
+        final Artifact artifact =
+                new DefaultArtifact("org.example", "example", "jar", "1.0");
+        artifactRequest = new ArtifactRequest(artifact, null, "");
+        descriptorRequest = new ArtifactDescriptorRequest(artifact, null, "");
+    }
+
+    @TearDown
+    public void tearDown() {
+        TemporaryDirectory.delete(dir);
+    }
+
+    @Benchmark
+    public ArtifactResult resolveArtifact()
+            throws ArtifactResolutionException {
+
+        return repositorySystem.resolveArtifact(session, artifactRequest);
+    }
+
+    @Benchmark
+    public ArtifactDescriptorResult readArtifactDescriptor()
+            throws ArtifactDescriptorException {
+
+        return repositorySystem.readArtifactDescriptor(session,
+                descriptorRequest);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Generates depmap fragments shaped like the ones Fedora packages install:
+ * artifacts spread over a few groups, every other one mapped per version.
+ */
+final class DepmapFiles {
+    static final int GROUPS = 50;
+
+    private DepmapFiles() {
+    }
+
+    static String groupId(int i) {
+        return "org.example.g" + (i % GROUPS);
+    }
+
+    static String artifactId(int i) {
+        return "a" + i;
+    }
+
+    static String version(int i) {
+        return "1." + i;
+    }
+
+    static File write(File file, int entries) throws IOException {
+        final Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int i = 0; i < entries; i++) {
+                final String version = i % 2 == 0
+                        ? "<version>" + version(i) + "</version>"
+                        : "";
+                writer.write("<dependency>\n"
+                        + "  <maven>\n"
+                        + "    <groupId>" + groupId(i) + "</groupId>\n"
+                        + "    <artifactId>" + artifactId(i) + "</artifactId>\n"
+                        + "    " + version + "\n"
+                        + "  </maven>\n"
+                        + "  <jpp>\n"
+                        + "    <groupId>JPP/g" + (i % GROUPS) + "</groupId>\n"
+                        + "    <artifactId>" + artifactId(i) + "</artifactId>\n"
+                        + "    " + version + "\n"
+                        + "  </jpp>\n"
+                        + "</dependency>\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.fedoraproject.maven.benchmarks.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+/**
+ * {@link JavadirWorkspaceReader#findArtifact(Artifact)} against a generated
+ * tree of three jar directories and a pom directory. The jars are in the
+ * last jar directory, so every lookup walks the whole list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class JavadirWorkspaceReaderBenchmark {
+    private static final int GROUPS = 50;
+
+    @Param({ "1000", "10000" })
+    int jars;
+
+    private File dir;
+
+    private JavadirWorkspaceReader reader;
+
+    private Artifact jar;
+
+    private Artifact missingJar;
+
+    private Artifact pom;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = TemporaryDirectory.create("javadir");
+        final String[] repositories = new String[3];
+        for (int i = 0; i < repositories.length; i++) {
+            final File repository = new File(dir, "repository" + i);
+            repository.mkdirs();
+            repositories[i] = repository.getPath() + "/";
+        }
+        final File poms = new File(dir, "poms");
+        poms.mkdirs();
+
+        final File last = new File(repositories[repositories.length - 1]);
+        for (int i = 0; i < jars; i++) {
+            final File group = new File(last, "JPP/g" + (i % GROUPS));
+            group.mkdirs();
+            new File(group, "a" + i + ".jar").createNewFile();
+            new File(poms, "JPP.g" + (i % GROUPS) + "-a" + i + ".pom")
+                    .createNewFile();
+        }
+
+        reader = new JavadirWorkspaceReader(repositories,
+                new String[] { poms.getPath() + "/" },
+                new File(dir, "default_poms").getPath() + "/");
+        jar = new DefaultArtifact("JPP/g1", "a1", "jar", "1.0");
+        missingJar = new DefaultArtifact("JPP/g1", "missing", "jar", "1.0");
+        pom = new DefaultArtifact("JPP/g1", "a1", "pom", "1.0");
+    }
+
+    @TearDown
+    public void tearDown() {
+        TemporaryDirectory.delete(dir);
+    }
+
+    @Benchmark
+    public File findJar() {
+        return reader.findArtifact(jar);
+    }
+
+    @Benchmark
+    public File findMissingJar() {
+        return reader.findArtifact(missingJar);
+    }
+
+    @Benchmark
+    public File findPom() {
+        return reader.findArtifact(pom);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fedoraproject.maven.benchmarks.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in a loaded depmap, through the deprecated Hashtable API and
+ * through {@link MavenJPackageDepmap#getMapping(String, String, String)}.
+ * Lookups cycle through mapped artifacts, half of them mapped per version,
+ * and artifacts the depmap does not know.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class MavenJPackageDepmapBenchmark {
+    private static final int KEYS = 1024;
+
+    @Param({ "10000" })
+    int entries;
+
+    private File dir;
+
+    private MavenJPackageDepmap depmap;
+
+    private final String[][] keys = new String[KEYS][];
+
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = TemporaryDirectory.create("depmap");
+        final List<File> files = Collections.singletonList(
+                DepmapFiles.write(new File(dir, "depmap.xml"), entries));
+        depmap = new MavenJPackageDepmap(null) {
+            @Override
+            List<File> getDepmapFiles() {
+                return files;
+            }
+        };
+        depmap.reload();
+
+        for (int i = 0; i < KEYS; i++) {
+            // every fourth key is not in the depmap
+            final int entry = i % 4 == 3 ? entries + i : i * entries / KEYS;
+            keys[i] = new String[] { DepmapFiles.groupId(entry),
+                    DepmapFiles.artifactId(entry), DepmapFiles.version(entry) };
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        TemporaryDirectory.delete(dir);
+    }
+
+    private String[] nextKey() {
+        next = (next + 1) & (KEYS - 1);
+        return keys[next];
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public Hashtable<String, String> getMappedInfo() {
+        final String[] key = nextKey();
+        return depmap.getMappedInfo(key[0], key[1], key[2]);
+    }
+
+    @Benchmark
+    public JppMapping getMapping() {
+        final String[] key = nextKey();
+        return depmap.getMapping(key[0], key[1], key[2]);
+    }
+}
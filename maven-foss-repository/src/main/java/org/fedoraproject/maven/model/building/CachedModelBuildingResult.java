@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.model.building;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.apache.maven.model.building.ModelProblem;
+
+/**
+ * A deep copy of a model building result, so a result can be kept in a
+ * cache while callers change the models they got.
+ */
+class CachedModelBuildingResult implements ModelBuildingResult {
+    private final List<String> modelIds;
+    private final Model effectiveModel;
+    private final Map<String, Model> rawModels = new HashMap<String, Model>();
+    private final Map<String, List<Profile>> activePomProfiles =
+            new HashMap<String, List<Profile>>();
+    private final List<Profile> activeExternalProfiles;
+    private final List<ModelProblem> problems;
+
+    CachedModelBuildingResult(final ModelBuildingResult result) {
+        modelIds = new ArrayList<String>(result.getModelIds());
+        effectiveModel = result.getEffectiveModel().clone();
+        for (String modelId : modelIds) {
+            final Model rawModel = result.getRawModel(modelId);
+            rawModels.put(modelId, rawModel != null ? rawModel.clone() : null);
+            activePomProfiles.put(modelId,
+                    copy(result.getActivePomProfiles(modelId)));
+        }
+        activeExternalProfiles = copy(result.getActiveExternalProfiles());
+        // problems are immutable
+        problems = new ArrayList<ModelProblem>(result.getProblems());
+    }
+
+    private static List<Profile> copy(final List<Profile> profiles) {
+        if (profiles == null)
+            return null;
+        final List<Profile> copy = new ArrayList<Profile>(profiles.size());
+        for (Profile profile : profiles)
+            copy.add(profile.clone());
+        return copy;
+    }
+
+    @Override
+    public List<String> getModelIds() {
+        return modelIds;
+    }
+
+    @Override
+    public Model getEffectiveModel() {
+        return effectiveModel;
+    }
+
+    @Override
+    public Model getRawModel() {
+        return rawModels.get(modelIds.get(0));
+    }
+
+    @Override
+    public Model getRawModel(final String modelId) {
+        return rawModels.get(modelId);
+    }
+
+    @Override
+    public List<Profile> getActivePomProfiles(final String modelId) {
+        return activePomProfiles.get(modelId);
+    }
+
+    @Override
+    public List<Profile> getActiveExternalProfiles() {
+        return activeExternalProfiles;
+    }
+
+    @Override
+    public List<ModelProblem> getProblems() {
+        return problems;
+    }
+}
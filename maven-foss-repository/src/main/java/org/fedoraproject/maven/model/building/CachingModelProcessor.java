@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.model.building;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelProcessor;
+import org.apache.maven.model.io.ModelParseException;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+
+/**
+ * Keeps the raw models parsed from pom files, so a pom which is read over
+ * and over again, such as a common parent or a JPP pom many artifacts map
+ * to, is only parsed once as long as it does not change.
+ * <p/>
+ * The model builder changes the models it reads, so every read gets its own
+ * copy.
+ */
+@Component(role = ModelProcessor.class, hint = "fre")
+public class CachingModelProcessor implements ModelProcessor {
+    @Requirement
+    private ModelProcessor delegate;
+
+    private final ModelFileCache<Model> cache = new ModelFileCache<Model>(
+            Integer.getInteger("fre.cache.models", 2000));
+
+    private static class Key {
+        final String path;
+        final boolean strict;
+        final boolean locationTracking;
+
+        Key(final File pomFile, final Map<String, ?> options) {
+            this.path = pomFile.getAbsolutePath();
+            this.strict = isStrict(options);
+            this.locationTracking = options != null
+                    && options.get(INPUT_SOURCE) != null;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return path.equals(other.path) && strict == other.strict
+                    && locationTracking == other.locationTracking;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 4 + (strict ? 2 : 0)
+                    + (locationTracking ? 1 : 0);
+        }
+    }
+
+    public CachingModelProcessor() {
+    }
+
+    CachingModelProcessor(final ModelProcessor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public File locatePom(final File projectDirectory) {
+        return delegate.locatePom(projectDirectory);
+    }
+
+    @Override
+    public Model read(final File input, final Map<String, ?> options)
+            throws IOException, ModelParseException {
+
+        if (!cache.isEnabled())
+            return delegate.read(input, options);
+        final Key key = new Key(input, options);
+        final Model cached = cache.get(key);
+        if (cached != null)
+            return cached.clone();
+        return put(key, input, delegate.read(input, options));
+    }
+
+    @Override
+    public Model read(final Reader input, final Map<String, ?> options)
+            throws IOException, ModelParseException {
+
+        return delegate.read(input, options);
+    }
+
+    @Override
+    public Model read(final InputStream input, final Map<String, ?> options)
+            throws IOException, ModelParseException {
+
+        // the model builder reads from a stream, the source tells the file
+        final Object source = options != null ? options.get(SOURCE) : null;
+        if (!cache.isEnabled() || !(source instanceof FileModelSource))
+            return delegate.read(input, options);
+        final File pomFile = ((FileModelSource) source).getPomFile();
+        final Key key = new Key(pomFile, options);
+        final Model cached = cache.get(key);
+        if (cached != null) {
+            input.close();
+            return cached.clone();
+        }
+        return put(key, pomFile, delegate.read(input, options));
+    }
+
+    private Model put(final Key key, final File pomFile, final Model model) {
+        cache.put(key, Collections.singleton(pomFile), model.clone());
+        return model;
+    }
+
+    private static boolean isStrict(final Map<String, ?> options) {
+        final Object value = options != null ? options.get(IS_STRICT) : null;
+        return value == null || Boolean.parseBoolean(value.toString());
+    }
+
+    int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.model.building;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.ModelBuildingRequest;
+
+/**
+ * Identifies the effective model of a pom file: the file and everything in
+ * the request that goes into building it.
+ */
+class EffectiveModelKey {
+    private final String path;
+    private final int validationLevel;
+    private final boolean processPlugins;
+    private final boolean locationTracking;
+    private final List<String> profileIds;
+    private final List<String> activeProfileIds;
+    private final List<String> inactiveProfileIds;
+    private final Properties systemProperties;
+    private final Properties userProperties;
+    private final Date buildStartTime;
+    private final int hashCode;
+
+    EffectiveModelKey(final File pomFile, final ModelBuildingRequest request) {
+        this(pomFile, request, false);
+    }
+
+    private EffectiveModelKey(
+            final File pomFile,
+            final ModelBuildingRequest request,
+            final boolean snapshot) {
+
+        path = pomFile.getAbsolutePath();
+        validationLevel = request.getValidationLevel();
+        processPlugins = request.isProcessPlugins();
+        locationTracking = request.isLocationTracking();
+        profileIds = new ArrayList<String>();
+        for (Profile profile : request.getProfiles())
+            profileIds.add(profile.getId());
+        activeProfileIds = new ArrayList<String>(request.getActiveProfileIds());
+        inactiveProfileIds =
+                new ArrayList<String>(request.getInactiveProfileIds());
+        // only the key kept in the cache needs its own copy
+        systemProperties = snapshot
+                ? copy(request.getSystemProperties())
+                : request.getSystemProperties();
+        userProperties = snapshot
+                ? copy(request.getUserProperties())
+                : request.getUserProperties();
+        buildStartTime = request.getBuildStartTime();
+        int hash = path.hashCode();
+        hash = hash * 31 + validationLevel;
+        hash = hash * 31 + profileIds.hashCode();
+        hash = hash * 31 + activeProfileIds.hashCode();
+        hash = hash * 31 + inactiveProfileIds.hashCode();
+        hash = hash * 31 + hashCode(systemProperties);
+        hash = hash * 31 + hashCode(userProperties);
+        hashCode = hash;
+    }
+
+    /**
+     * @return a key that does not change along with the request
+     */
+    static EffectiveModelKey snapshot(
+            final File pomFile,
+            final ModelBuildingRequest request) {
+
+        return new EffectiveModelKey(pomFile, request, true);
+    }
+
+    private static Properties copy(final Properties properties) {
+        if (properties == null)
+            return null;
+        final Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    private static int hashCode(final Object o) {
+        return o != null ? o.hashCode() : 0;
+    }
+
+    private static boolean equals(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof EffectiveModelKey))
+            return false;
+        final EffectiveModelKey other = (EffectiveModelKey) obj;
+        return hashCode == other.hashCode
+                && path.equals(other.path)
+                && validationLevel == other.validationLevel
+                && processPlugins == other.processPlugins
+                && locationTracking == other.locationTracking
+                && profileIds.equals(other.profileIds)
+                && activeProfileIds.equals(other.activeProfileIds)
+                && inactiveProfileIds.equals(other.inactiveProfileIds)
+                && equals(systemProperties, other.systemProperties)
+                && equals(userProperties, other.userProperties)
+                && equals(buildStartTime, other.buildStartTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
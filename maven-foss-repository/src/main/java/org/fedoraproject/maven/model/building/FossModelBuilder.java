@@ -22,14 +22,20 @@
  */
 package org.fedoraproject.maven.model.building;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.building.DefaultModelBuilder;
+import org.apache.maven.model.building.FileModelSource;
 import org.apache.maven.model.building.ModelBuilder;
 import org.apache.maven.model.building.ModelBuildingException;
 import org.apache.maven.model.building.ModelBuildingRequest;
 import org.apache.maven.model.building.ModelBuildingResult;
 import org.apache.maven.model.validation.ModelValidator;
+import org.fedoraproject.maven.repository.jpp.JavadirWorkspaceReader;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.sonatype.aether.spi.log.Logger;
@@ -49,6 +55,18 @@ public class FossModelBuilder implements ModelBuilder {
     @Requirement(hint = "default")
     private ModelValidator defaultModelValidator;
 
+    // effective models of JPP poms, many artifacts map to the same pom
+    private final ModelFileCache<ModelBuildingResult> effectiveModels =
+            new ModelFileCache<ModelBuildingResult>(
+                    Integer.getInteger("fre.cache.models", 2000));
+
+    public FossModelBuilder() {
+    }
+
+    FossModelBuilder(DefaultModelBuilder delegate) {
+        this.delegate = delegate;
+    }
+
     @Override
     public ModelBuildingResult build(ModelBuildingRequest request)
             throws ModelBuildingException {
@@ -59,8 +77,62 @@ public class FossModelBuilder implements ModelBuilder {
             // just perform phase 1
             return delegate.build(request);
         }
-        final ModelBuildingResult result = delegate.build(request);
-        return fixUp(request, result);
+        final File pomFile = getCacheablePomFile(request);
+        if (pomFile == null) {
+            final ModelBuildingResult result = delegate.build(request);
+            return fixUp(request, result);
+        }
+        final EffectiveModelKey key = new EffectiveModelKey(pomFile, request);
+        final ModelBuildingResult cached = effectiveModels.get(key);
+        if (cached != null)
+            return new CachedModelBuildingResult(cached);
+        final ModelBuildingResult result = fixUp(request, delegate.build(request));
+        final ModelBuildingResult copy = new CachedModelBuildingResult(result);
+        effectiveModels.put(EffectiveModelKey.snapshot(pomFile, request),
+                getPomFiles(pomFile, copy), copy);
+        return result;
+    }
+
+    /**
+     * Only the effective models of JPP poms read as dependencies are
+     * cached; projects are changed by their builds and nobody listens for
+     * the events of a cached build.
+     *
+     * @return the pom file to cache the effective model of, or null
+     */
+    private File getCacheablePomFile(ModelBuildingRequest request) {
+        if (!effectiveModels.isEnabled() || request.getPomFile() != null
+                || request.getModelBuildingListener() != null
+                || !(request.getModelSource() instanceof FileModelSource))
+            return null;
+        final File pomFile =
+                ((FileModelSource) request.getModelSource()).getPomFile();
+        return isCacheable(pomFile) ? pomFile : null;
+    }
+
+    boolean isCacheable(File pomFile) {
+        return JavadirWorkspaceReader.isJppPom(pomFile);
+    }
+
+    /**
+     * Models read from a model source do not know their file, so parents
+     * only count if they were read locally.
+     *
+     * @return the files of the pom and its parents
+     */
+    private static List<File> getPomFiles(
+            File pomFile,
+            ModelBuildingResult result) {
+
+        final List<File> pomFiles = new ArrayList<File>();
+        pomFiles.add(pomFile);
+        for (String modelId : result.getModelIds()) {
+            final Model rawModel = result.getRawModel(modelId);
+            if (rawModel != null && rawModel.getPomFile() != null
+                    && !rawModel.getPomFile().equals(pomFile))
+                pomFiles.add(rawModel.getPomFile());
+        }
+        return pomFiles;
     }
 
     @Override
@@ -77,7 +149,7 @@ public class FossModelBuilder implements ModelBuilder {
             ModelBuildingRequest request,
             ModelBuildingResult result) {
 
-        if (!isFromJPP(request, result))
+        if (!isFromJPP(result.getEffectiveModel(), request))
             return result;
 
         for (Dependency dependency : result.getEffectiveModel().getDependencies()) {
@@ -99,11 +171,23 @@ public class FossModelBuilder implements ModelBuilder {
         return result;
     }
 
-    private boolean isFromJPP(
-            ModelBuildingRequest request,
-            ModelBuildingResult result) {
+    /**
+     * Only models read from the JPP pom directories need to be fixed up,
+     * all others are validated as usual.
+     *
+     * @param model   the model being built, may be null
+     * @param request the request building it
+     * @return whether the model was read from a JPP pom
+     */
+    public static boolean isFromJPP(
+            Model model,
+            ModelBuildingRequest request) {
 
-        // TODO: how to implement this?
-        return true;
+        File pomFile = model != null ? model.getPomFile() : null;
+        if (pomFile == null)
+            pomFile = request.getPomFile();
+        if (pomFile == null && request.getModelSource() instanceof FileModelSource)
+            pomFile = ((FileModelSource) request.getModelSource()).getPomFile();
+        return JavadirWorkspaceReader.isJppPom(pomFile);
     }
 }
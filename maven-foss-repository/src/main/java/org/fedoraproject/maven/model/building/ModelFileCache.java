@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.model.building;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches values derived from pom files. An entry is only returned while each
+ * of the files it was derived from still has the length and modification
+ * time it had when the entry was added. The cache holds at most a fixed
+ * number of entries, least recently used ones are evicted first, and values
+ * are softly referenced so the garbage collector can reclaim them under
+ * memory pressure.
+ * <p/>
+ * Values are handed out as they were put in, callers that hand them on
+ * must copy them.
+ */
+class ModelFileCache<V> {
+    private static class CachedEntry<V> {
+        final File[] files;
+        final long[] lengths;
+        final long[] lastModified;
+        final V value;
+
+        CachedEntry(final Collection<File> files, final V value) {
+            this.files = files.toArray(new File[files.size()]);
+            this.lengths = new long[this.files.length];
+            this.lastModified = new long[this.files.length];
+            for (int i = 0; i < this.files.length; i++) {
+                lengths[i] = this.files[i].length();
+                lastModified[i] = this.files[i].lastModified();
+            }
+            this.value = value;
+        }
+
+        boolean isCurrent() {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].length() != lengths[i]
+                        || files[i].lastModified() != lastModified[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private final int maxEntries;
+
+    private final Map<Object, SoftReference<CachedEntry<V>>> entries;
+
+    ModelFileCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Object, SoftReference<CachedEntry<V>>>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Object, SoftReference<CachedEntry<V>>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * @return the cached value, or {@code null} if there is none or one of
+     *         its files changed
+     */
+    V get(final Object key) {
+        final CachedEntry<V> entry;
+        synchronized (entries) {
+            final SoftReference<CachedEntry<V>> ref = entries.get(key);
+            if (ref == null)
+                return null;
+            entry = ref.get();
+            if (entry == null) {
+                entries.remove(key);
+                return null;
+            }
+        }
+        // stat the files outside of the lock
+        if (entry.isCurrent())
+            return entry.value;
+        synchronized (entries) {
+            final SoftReference<CachedEntry<V>> ref = entries.get(key);
+            if (ref != null && ref.get() == entry)
+                entries.remove(key);
+        }
+        return null;
+    }
+
+    /**
+     * @param files the files the value was derived from
+     */
+    void put(final Object key, final Collection<File> files, final V value) {
+        if (!isEnabled())
+            return;
+        final SoftReference<CachedEntry<V>> ref =
+                new SoftReference<CachedEntry<V>>(
+                        new CachedEntry<V>(files, value));
+        synchronized (entries) {
+            entries.put(key, ref);
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
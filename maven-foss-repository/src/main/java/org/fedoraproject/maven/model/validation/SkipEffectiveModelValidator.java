@@ -28,11 +28,13 @@ import org.apache.maven.model.building.ModelProblemCollector;
 import org.apache.maven.model.validation.ModelValidator;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.fedoraproject.maven.model.building.FossModelBuilder;
 
 /**
  * This class is purely in place to skip effective model validation.
  * JPP contains invalid poms, so we want to skip the effective model validation,
- * fix-up the model and then validate.
+ * fix-up the model and then validate. Models from anywhere else are validated
+ * right away.
  *
  * @author <a href="mailto:cdewolf@redhat.com">Carlo de Wolf</a>
  */
@@ -56,6 +58,8 @@ public class SkipEffectiveModelValidator implements ModelValidator {
             ModelBuildingRequest request,
             ModelProblemCollector problems) {
 
-        // noop
+        // JPP models are validated by FossModelBuilder after the fix-up
+        if (!FossModelBuilder.isFromJPP(model, request))
+            defaultModelValidator.validateEffectiveModel(model, request, problems);
     }
 }
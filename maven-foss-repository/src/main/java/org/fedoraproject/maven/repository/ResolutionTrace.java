@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A trace of what FRE does, written as one JSON object per line by a
+ * background thread. Tracing is enabled by <code>fre.trace</code>, which
+ * names the file to write; <code>-Dfre.trace</code> without a file writes
+ * <code>fre-trace.jsonl</code>.
+ * <p/>
+ * Callers check {@link #ENABLED} before building an event, so tracing costs
+ * nothing when it is off:
+ * <pre>
+ * if (ResolutionTrace.ENABLED) {
+ *     ResolutionTrace.event("miss", "resolveArtifact", stage, key, nanos);
+ * }
+ * </pre>
+ * Events never hold up the build: when the writer falls behind and the
+ * queue is full, or once the writer has stopped, they are dropped and
+ * counted.
+ */
+public final class ResolutionTrace {
+    public static final boolean ENABLED =
+            System.getProperty("fre.trace") != null;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int CAPACITY = 64 * 1024;
+
+    private static class Event {
+        final long time = System.currentTimeMillis();
+        final String thread = Thread.currentThread().getName();
+        final String type;
+        final String entryPoint;
+        final Object stage;
+        final Object subject;
+        final long nanos;
+
+        Event(final String type, final String entryPoint, final Object stage,
+                final Object subject, final long nanos) {
+            this.type = type;
+            this.entryPoint = entryPoint;
+            this.stage = stage;
+            this.subject = subject;
+            this.nanos = nanos;
+        }
+    }
+
+    private static class InstanceHolder {
+        private static final ResolutionTrace INSTANCE = newDefaultInstance();
+    }
+
+    // ends the queue
+    private static final Event CLOSE = new Event("close", null, null, null, -1);
+
+    private final BlockingQueue<Event> events =
+            new LinkedBlockingQueue<Event>(CAPACITY);
+
+    private final Thread writerThread;
+
+    // set once the writer will not take any more events
+    private volatile boolean stopped;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    ResolutionTrace(final Writer out) {
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write(out);
+            }
+        }, "fre-trace");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private static ResolutionTrace newDefaultInstance() {
+        String fileName = System.getProperty("fre.trace");
+        if (fileName.length() == 0 || "true".equals(fileName)) {
+            fileName = "fre-trace.jsonl";
+        }
+        final Writer out;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(fileName), true), UTF8));
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to open trace file " + fileName
+                    + ": " + e);
+            return null;
+        }
+        final ResolutionTrace trace = new ResolutionTrace(out);
+        Runtime.getRuntime().addShutdownHook(new Thread("fre-trace-close") {
+            @Override
+            public void run() {
+                trace.close();
+            }
+        });
+        return trace;
+    }
+
+    /**
+     * Trace an event, if tracing is enabled.
+     *
+     * @param type       what happened, for example attempt, hit or miss
+     * @param entryPoint the method of the extension, may be null
+     * @param stage      the fallback stage, may be null
+     * @param subject    what the event is about, usually an artifact, turned
+     *                   into a string by the writer thread
+     * @param nanos      the duration, or -1 if the event has none
+     */
+    public static void event(final String type, final String entryPoint,
+            final Object stage, final Object subject, final long nanos) {
+
+        if (!ENABLED) {
+            return;
+        }
+        final ResolutionTrace trace = InstanceHolder.INSTANCE;
+        if (trace != null) {
+            trace.add(new Event(type, entryPoint, stage, subject, nanos));
+        }
+    }
+
+    /**
+     * Trace a message, if tracing is enabled.
+     */
+    public static void message(final String message) {
+        event("message", null, null, message, -1);
+    }
+
+    void add(final Event event) {
+        if (stopped || !events.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    void add(final String type, final String entryPoint, final Object stage,
+            final Object subject, final long nanos) {
+
+        add(new Event(type, entryPoint, stage, subject, nanos));
+    }
+
+    /**
+     * @return the number of events that were not written
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write the queued events and stop the writer thread.
+     */
+    void close() {
+        stopped = true;
+        try {
+            final long timeout = TimeUnit.SECONDS.toMillis(10);
+            if (events.offer(CLOSE, timeout, TimeUnit.MILLISECONDS)) {
+                writerThread.join(timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            System.err.println("WARNING: Dropped " + dropped.get()
+                    + " trace events");
+        }
+    }
+
+    private void write(final Writer out) {
+        final StringBuilder line = new StringBuilder(256);
+        try {
+            try {
+                while (true) {
+                    Event event = events.poll();
+                    if (event == null) {
+                        // nothing else to write for now
+                        out.flush();
+                        event = events.take();
+                    }
+                    if (event == CLOSE) {
+                        return;
+                    }
+                    line.setLength(0);
+                    toJson(line, event);
+                    out.write(line.append('\n').toString());
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to write trace: " + e);
+        } catch (InterruptedException e) {
+            // the JVM is going away
+        } finally {
+            stopped = true;
+            // whatever is still queued will never be written
+            dropped.addAndGet(events.size());
+            events.clear();
+        }
+    }
+
+    private static void toJson(final StringBuilder json, final Event event) {
+        json.append("{\"time\":").append(event.time);
+        appendField(json, "thread", event.thread);
+        appendField(json, "event", event.type);
+        appendField(json, "entryPoint", event.entryPoint);
+        appendField(json, "stage", event.stage);
+        appendField(json, "subject", event.subject);
+        if (event.nanos >= 0) {
+            json.append(",\"nanos\":").append(event.nanos);
+        }
+        json.append('}');
+    }
+
+    private static void appendField(final StringBuilder json,
+            final String name, final Object value) {
+
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        final String string = value.toString();
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+            case '"':
+                json.append("\\\"");
+                break;
+            case '\\':
+                json.append("\\\\");
+                break;
+            case '\n':
+                json.append("\\n");
+                break;
+            case '\r':
+                json.append("\\r");
+                break;
+            case '\t':
+                json.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+        }
+        json.append('"');
+    }
+}
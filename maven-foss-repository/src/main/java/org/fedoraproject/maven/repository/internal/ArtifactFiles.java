@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Puts artifact files into a repository, linking them where the file system
+ * allows and copying them otherwise. Either way the file is read once, and
+ * its checksums come from that same read.
+ */
+final class ArtifactFiles {
+    // Files.createLink and File.toPath, only available on Java 7
+    private static final Method TO_PATH;
+    private static final Method CREATE_LINK;
+
+    static {
+        Method toPath = null;
+        Method createLink = null;
+        try {
+            final Class<?> path = Class.forName("java.nio.file.Path");
+            final Class<?> files = Class.forName("java.nio.file.Files");
+            toPath = File.class.getMethod("toPath");
+            createLink = files.getMethod("createLink", path, path);
+        } catch (ClassNotFoundException e) {
+            // Java 6
+        } catch (NoSuchMethodException e) {
+            // Java 6
+        }
+        TO_PATH = toPath;
+        CREATE_LINK = createLink;
+    }
+
+    private ArtifactFiles() {
+    }
+
+    /**
+     * Put the source file at the target, replacing what is there.
+     *
+     * @param link whether a hard link may be used instead of a copy
+     * @return the checksums of the file by algorithm
+     */
+    static Map<String, String> install(
+            final File source,
+            final File target,
+            final boolean link,
+            final String... algorithms) throws IOException {
+
+        final File directory = target.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            return Checksums.compute(source, algorithms);
+        }
+
+        // publish complete files only
+        final File temp = getStagingFile(target);
+        temp.delete();
+        final Map<String, String> checksums =
+                copy(source, temp, link, algorithms);
+        rename(temp, target);
+        return checksums;
+    }
+
+    /**
+     * @return the name under which a file is written before it is renamed
+     *         to the given target
+     */
+    static File getStagingFile(final File target) {
+        return new File(target.getAbsoluteFile().getParentFile(),
+                '.' + target.getName() + ".fre-tmp");
+    }
+
+    /**
+     * Link or copy the source file to a target which does not exist yet.
+     *
+     * @return the checksums of the file by algorithm
+     */
+    static Map<String, String> copy(
+            final File source,
+            final File target,
+            final boolean link,
+            final String... algorithms) throws IOException {
+
+        if (link && link(source, target)) {
+            return Checksums.compute(source, algorithms);
+        }
+        return copyMapped(source, target, algorithms);
+    }
+
+    private static boolean link(final File source, final File link) {
+        if (CREATE_LINK == null) {
+            return false;
+        }
+        try {
+            CREATE_LINK.invoke(null, TO_PATH.invoke(link),
+                    TO_PATH.invoke(source));
+            return true;
+        } catch (IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            // another file system, or no support for links
+            return false;
+        }
+    }
+
+    /**
+     * Copy a file by writing its mapped content to the target channel, so the
+     * kernel moves the data and the digests see the same pages.
+     */
+    private static Map<String, String> copyMapped(
+            final File source,
+            final File target,
+            final String... algorithms) throws IOException {
+
+        final MessageDigest[] digests = Checksums.newDigests(algorithms);
+        final RandomAccessFile in = new RandomAccessFile(source, "r");
+        try {
+            final RandomAccessFile out = new RandomAccessFile(target, "rw");
+            try {
+                final FileChannel inChannel = in.getChannel();
+                final FileChannel outChannel = out.getChannel();
+                final long size = inChannel.size();
+                outChannel.truncate(0);
+                for (long position = 0; position < size;
+                        position += Checksums.CHUNK_SIZE) {
+                    final MappedByteBuffer buffer = inChannel.map(
+                            FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(Checksums.CHUNK_SIZE, size - position));
+                    Checksums.update(digests, buffer);
+                    while (buffer.hasRemaining()) {
+                        outChannel.write(buffer);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        target.setLastModified(source.lastModified());
+        return Checksums.toMap(algorithms, digests);
+    }
+
+    /**
+     * Move a file into place, replacing the target.
+     */
+    static void rename(final File source, final File target)
+            throws IOException {
+
+        if (source.renameTo(target)) {
+            return;
+        }
+        // some platforms will not rename onto an existing file
+        target.delete();
+        if (!source.renameTo(target)) {
+            throw new IOException("Could not move " + source + " to " + target);
+        }
+    }
+}
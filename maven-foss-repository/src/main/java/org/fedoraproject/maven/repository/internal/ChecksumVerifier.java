@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verifies files against the SHA-256 and SHA-1 checksum files next to them.
+ * <p/>
+ * The checksums of a file are computed once and remembered until its length
+ * or modification time changes, optionally across builds in a cache file.
+ * Java 6 can not see inodes, so a file is identified by its absolute path,
+ * its length and its modification time.
+ * <p/>
+ * The cache file is written once, when the JVM exits, and then only keeps
+ * the files that still exist.
+ */
+class ChecksumVerifier {
+    /**
+     * What to do about a file which does not match its checksums.
+     */
+    enum Policy {
+        /** do not verify */
+        IGNORE,
+        /** log a warning */
+        WARN,
+        /** fail the resolution */
+        STRICT;
+
+        static Policy of(final String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown checksum policy "
+                        + name + ", expected ignore, warn or strict");
+            }
+        }
+    }
+
+    /**
+     * The checksums verified, in order of preference.
+     */
+    static final String[] ALGORITHMS = { "SHA-256", "SHA-1" };
+
+    private static final int MAGIC = 0x46524543; // "FREC"
+    private static final int FORMAT_VERSION = 1;
+
+    // a path, a length, a modification time and a count
+    private static final int MIN_ENTRY_SIZE = 2 + 8 + 8 + 4;
+
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        final Map<String, String> checksums;
+
+        Entry(final long length, final long lastModified,
+                final Map<String, String> checksums) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksums = checksums;
+        }
+    }
+
+    private final Policy policy;
+
+    private final File cacheFile;
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicBoolean loaded = new AtomicBoolean();
+
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    private final AtomicBoolean saveOnExit = new AtomicBoolean();
+
+    /**
+     * @param cacheFile the file in which computed checksums are kept between
+     *        builds, or null to keep them in memory only
+     */
+    ChecksumVerifier(final Policy policy, final File cacheFile) {
+        this.policy = policy;
+        this.cacheFile = cacheFile;
+    }
+
+    Policy getPolicy() {
+        return policy;
+    }
+
+    boolean isEnabled() {
+        return policy != Policy.IGNORE;
+    }
+
+    /**
+     * Verify a file against the checksum files of another, for example the
+     * copy of an artifact in the local repository against the checksums in
+     * the repository it came from.
+     *
+     * @param checksumBase the file whose checksum files to use, the checksum
+     *        file of SHA-1 is <code>checksumBase.sha1</code>
+     * @return null if the file matches, otherwise a description of the
+     *         problem
+     */
+    String verify(final File file, final File checksumBase) throws IOException {
+        final Map<String, String> expected =
+                new LinkedHashMap<String, String>();
+        for (String algorithm : ALGORITHMS) {
+            final String checksum = readChecksum(new File(checksumBase.getPath()
+                    + '.' + Checksums.getExtension(algorithm)));
+            if (checksum != null) {
+                expected.put(algorithm, checksum);
+            }
+        }
+        if (expected.isEmpty()) {
+            return "No checksums found for " + checksumBase;
+        }
+
+        final Map<String, String> actual = getChecksums(file);
+        for (Map.Entry<String, String> checksum : expected.entrySet()) {
+            final String algorithm = checksum.getKey();
+            if (!checksum.getValue().equalsIgnoreCase(actual.get(algorithm))) {
+                return algorithm + " checksum of " + file + " is "
+                        + actual.get(algorithm) + ", expected "
+                        + checksum.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the checksums of the file by algorithm, computed only if the
+     *         file changed since they were last computed
+     */
+    Map<String, String> getChecksums(final File file) throws IOException {
+        load();
+        final String path = file.getAbsolutePath();
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final Entry entry = entries.get(path);
+        if (entry != null && entry.length == length
+                && entry.lastModified == lastModified) {
+            return entry.checksums;
+        }
+
+        final Map<String, String> checksums =
+                Checksums.compute(file, ALGORITHMS);
+        // a file modified while it was hashed is hashed again next time
+        if (file.length() == length && file.lastModified() == lastModified) {
+            entries.put(path, new Entry(length, lastModified, checksums));
+            changed.set(true);
+            if (cacheFile != null && saveOnExit.compareAndSet(false, true)) {
+                Runtime.getRuntime().addShutdownHook(
+                        new Thread("fre-checksums-save") {
+                    @Override
+                    public void run() {
+                        try {
+                            save();
+                        } catch (IOException e) {
+                            // the checksums will be computed again
+                        }
+                    }
+                });
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * @return the number of files whose checksums are known
+     */
+    int size() {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * @return the first word of the checksum file, or null if there is none
+     */
+    private static String readChecksum(final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            // some tools append the file name to the checksum
+            final String line = reader.readLine();
+            if (line == null || line.trim().length() == 0) {
+                return null;
+            }
+            return line.trim().split("\\s+", 2)[0];
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read the cache file. A corrupt cache is ignored as a whole and a
+     * truncated one is as good as the entries read so far.
+     */
+    private void load() {
+        if (cacheFile == null || !loaded.compareAndSet(false, true)
+                || !cacheFile.isFile()) {
+            return;
+        }
+        final Map<String, Entry> read = new LinkedHashMap<String, Entry>();
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    return;
+                }
+                final int count = in.readInt();
+                if (count < 0 || count > cacheFile.length() / MIN_ENTRY_SIZE) {
+                    throw new IOException("Invalid entry count " + count);
+                }
+                for (int i = 0; i < count; i++) {
+                    final String path = in.readUTF();
+                    final long length = in.readLong();
+                    final long lastModified = in.readLong();
+                    final int checksumCount = in.readInt();
+                    if (checksumCount < 0
+                            || checksumCount > ALGORITHMS.length) {
+                        throw new IOException("Invalid checksum count "
+                                + checksumCount);
+                    }
+                    final Map<String, String> checksums =
+                            new LinkedHashMap<String, String>(checksumCount * 2);
+                    for (int j = 0; j < checksumCount; j++) {
+                        checksums.put(in.readUTF(), in.readUTF());
+                    }
+                    read.put(path, new Entry(length, lastModified, checksums));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (EOFException e) {
+            // keep the entries read so far
+        } catch (IOException e) {
+            read.clear();
+        } catch (RuntimeException e) {
+            read.clear();
+        }
+        for (Map.Entry<String, Entry> entry : read.entrySet()) {
+            // whatever was computed in the meantime is more recent
+            entries.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Write the cache file if checksums were computed since it was read,
+     * leaving out files that no longer exist. The cache is written to a
+     * temporary file first, which then replaces the cache, so concurrent
+     * builds never see a partial cache.
+     */
+    void save() throws IOException {
+        if (cacheFile == null || !changed.compareAndSet(true, false)) {
+            return;
+        }
+        final List<Map.Entry<String, Entry>> snapshot =
+                new ArrayList<Map.Entry<String, Entry>>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (new File(entry.getKey()).isFile()) {
+                snapshot.add(entry);
+            }
+        }
+        final File dir = cacheFile.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        final File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> mapEntry : snapshot) {
+                    final Entry entry = mapEntry.getValue();
+                    out.writeUTF(mapEntry.getKey());
+                    out.writeLong(entry.length);
+                    out.writeLong(entry.lastModified);
+                    out.writeInt(entry.checksums.size());
+                    for (Map.Entry<String, String> checksum
+                            : entry.checksums.entrySet()) {
+                        out.writeUTF(checksum.getKey());
+                        out.writeUTF(checksum.getValue());
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            ArtifactFiles.rename(tmpFile, cacheFile);
+        } catch (IOException e) {
+            // try again next time
+            changed.set(true);
+            throw e;
+        } finally {
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes checksums of files, reading them through memory mappings so the
+ * content is never copied into the heap.
+ */
+final class Checksums {
+    /**
+     * The checksums Maven repositories carry next to each file.
+     */
+    static final String[] REPOSITORY_ALGORITHMS = { "SHA-1", "MD5" };
+
+    // larger files are mapped a chunk at a time
+    static final long CHUNK_SIZE = 64L * 1024 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Checksums() {
+    }
+
+    static MessageDigest[] newDigests(final String... algorithms) {
+        final MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(algorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(
+                        "Unsupported checksum algorithm " + algorithms[i], e);
+            }
+        }
+        return digests;
+    }
+
+    static void update(final MessageDigest[] digests,
+            final MappedByteBuffer buffer) {
+
+        for (MessageDigest digest : digests) {
+            digest.update(buffer.duplicate());
+        }
+    }
+
+    /**
+     * @return the checksums by algorithm, as lower case hex strings
+     */
+    static Map<String, String> toMap(
+            final String[] algorithms,
+            final MessageDigest[] digests) {
+
+        final Map<String, String> checksums =
+                new LinkedHashMap<String, String>(algorithms.length * 2);
+        for (int i = 0; i < algorithms.length; i++) {
+            checksums.put(algorithms[i], toHex(digests[i].digest()));
+        }
+        return checksums;
+    }
+
+    static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the checksums of the file by algorithm
+     */
+    static Map<String, String> compute(
+            final File file,
+            final String... algorithms) throws IOException {
+
+        final MessageDigest[] digests = newDigests(algorithms);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            for (long position = 0; position < size; position += CHUNK_SIZE) {
+                update(digests, channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(CHUNK_SIZE, size - position)));
+            }
+        } finally {
+            raf.close();
+        }
+        return toMap(algorithms, digests);
+    }
+
+    /**
+     * @return the file extension of the checksum files of an algorithm,
+     *         for example sha1 for SHA-1
+     */
+    static String getExtension(final String algorithm) {
+        return algorithm.replace("-", "").toLowerCase();
+    }
+
+    /**
+     * Write a checksum file next to the given file for every checksum.
+     */
+    static void write(
+            final File file,
+            final Map<String, String> checksums) throws IOException {
+
+        for (Map.Entry<String, String> checksum : checksums.entrySet()) {
+            final OutputStream out = new FileOutputStream(new File(
+                    file.getPath() + '.' + getExtension(checksum.getKey())));
+            try {
+                out.write(checksum.getValue().getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
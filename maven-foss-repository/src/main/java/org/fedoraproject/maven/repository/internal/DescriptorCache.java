@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.graph.Dependency;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.resolution.ArtifactDescriptorResult;
+
+/**
+ * Caches successful artifact descriptor reads per stage of the fallback
+ * chain. The cache holds at most a fixed number of descriptors, least
+ * recently used ones are evicted first, and descriptors are softly
+ * referenced so the garbage collector can reclaim them under memory
+ * pressure.
+ * <p/>
+ * Descriptors are copied on the way in and on the way out, so callers
+ * mutating a result do not affect the cache.
+ */
+class DescriptorCache {
+    private final Map<String, SoftReference<ArtifactDescriptorResult>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    DescriptorCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, SoftReference<ArtifactDescriptorResult>>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, SoftReference<ArtifactDescriptorResult>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param artifactKey the coordinates of the requested artifact, see
+     *            {@link NegativeLookupCache#key(Artifact)}
+     * @return a copy of the cached descriptor, or {@code null}
+     */
+    ArtifactDescriptorResult get(
+            final ResolutionStage stage,
+            final String artifactKey) {
+
+        final String key = stage.name() + ':' + artifactKey;
+        final ArtifactDescriptorResult result;
+        synchronized (entries) {
+            final SoftReference<ArtifactDescriptorResult> ref = entries.get(key);
+            result = ref != null ? ref.get() : null;
+            if (ref != null && result == null) {
+                entries.remove(key);
+            }
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(result);
+    }
+
+    void put(
+            final ResolutionStage stage,
+            final String artifactKey,
+            final ArtifactDescriptorResult result) {
+
+        final String key = stage.name() + ':' + artifactKey;
+        final SoftReference<ArtifactDescriptorResult> ref =
+                new SoftReference<ArtifactDescriptorResult>(copy(result));
+        synchronized (entries) {
+            entries.put(key, ref);
+        }
+    }
+
+    private static ArtifactDescriptorResult copy(
+            final ArtifactDescriptorResult result) {
+
+        // artifacts and dependencies are immutable, the collections are not
+        return new ArtifactDescriptorResult(result.getRequest())
+                .setArtifact(result.getArtifact())
+                .setRepository(result.getRepository())
+                .setExceptions(new ArrayList<Exception>(result.getExceptions()))
+                .setRelocations(new ArrayList<Artifact>(result.getRelocations()))
+                .setAliases(new ArrayList<Artifact>(result.getAliases()))
+                .setDependencies(new ArrayList<Dependency>(
+                        result.getDependencies()))
+                .setManagedDependencies(new ArrayList<Dependency>(
+                        result.getManagedDependencies()))
+                .setRepositories(new ArrayList<RemoteRepository>(
+                        result.getRepositories()))
+                .setProperties(new HashMap<String, Object>(
+                        result.getProperties()));
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DescriptorCache[entries=" + size() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + "]";
+    }
+}
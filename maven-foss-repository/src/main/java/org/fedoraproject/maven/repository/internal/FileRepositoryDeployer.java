@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.deployment.DeploymentException;
+import org.sonatype.aether.metadata.Metadata;
+import org.sonatype.aether.util.metadata.DefaultMetadata;
+
+/**
+ * Deploys a batch of artifacts to a repository directory. All files are
+ * first staged next to their final location, with their checksums computed
+ * in parallel. Only when every file is staged are they renamed into place,
+ * after which the versions metadata of each groupId and artifactId is
+ * updated once.
+ * <p/>
+ * The caller is expected to hold an exclusive sync context on the artifacts
+ * and on {@link #getVersionsMetadata(Iterable)}.
+ */
+class FileRepositoryDeployer {
+    private final File basedir;
+
+    private final ExecutorService executor;
+
+    FileRepositoryDeployer(final File basedir, final ExecutorService executor) {
+        this.basedir = basedir;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the versions metadata touched by deploying the artifacts, by
+     *         groupId:artifactId
+     */
+    static Map<String, Metadata> getVersionsMetadata(
+            final Iterable<? extends Artifact> artifacts) {
+
+        final Map<String, Metadata> metadata =
+                new LinkedHashMap<String, Metadata>();
+        for (Artifact artifact : artifacts) {
+            final String key = artifact.getGroupId() + ':'
+                    + artifact.getArtifactId();
+            if (!metadata.containsKey(key)) {
+                metadata.put(key, new DefaultMetadata(artifact.getGroupId(),
+                        artifact.getArtifactId(), "maven-metadata.xml",
+                        Metadata.Nature.RELEASE_OR_SNAPSHOT));
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the deployed artifacts, with their files in the repository
+     */
+    List<Artifact> deploy(final List<? extends Artifact> artifacts)
+            throws DeploymentException {
+
+        final List<File> targets = new ArrayList<File>(artifacts.size());
+        final List<Future<File>> staged =
+                new ArrayList<Future<File>>(artifacts.size());
+        for (final Artifact artifact : artifacts) {
+            final File target = new File(basedir,
+                    RepositoryLayout.getPath(artifact));
+            targets.add(target);
+            staged.add(executor.submit(new Callable<File>() {
+                public File call() throws IOException {
+                    return stage(artifact.getFile(), target);
+                }
+            }));
+        }
+
+        try {
+            for (int i = 0; i < staged.size(); i++) {
+                try {
+                    staged.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new DeploymentException("Failed to stage "
+                            + artifacts.get(i) + " to " + targets.get(i),
+                            e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DeploymentException("Interrupted while staging "
+                            + artifacts.get(i), e);
+                }
+            }
+        } catch (DeploymentException e) {
+            for (Future<File> future : staged) {
+                future.cancel(true);
+            }
+            for (File target : targets) {
+                discard(ArtifactFiles.getStagingFile(target));
+            }
+            throw e;
+        }
+
+        final List<Artifact> result = new ArrayList<Artifact>(artifacts.size());
+        for (int i = 0; i < artifacts.size(); i++) {
+            try {
+                publish(targets.get(i));
+            } catch (IOException e) {
+                // whatever is not published yet stays out of the repository
+                for (File target : targets.subList(i, targets.size())) {
+                    discard(ArtifactFiles.getStagingFile(target));
+                }
+                throw new DeploymentException("Failed to publish "
+                        + artifacts.get(i) + " to " + targets.get(i), e);
+            }
+            result.add(artifacts.get(i).setFile(targets.get(i)));
+        }
+
+        final Map<String, Set<String>> versions =
+                new LinkedHashMap<String, Set<String>>();
+        for (Artifact artifact : artifacts) {
+            final String key = artifact.getGroupId() + ':'
+                    + artifact.getArtifactId();
+            Set<String> artifactVersions = versions.get(key);
+            if (artifactVersions == null) {
+                artifactVersions = new LinkedHashSet<String>();
+                versions.put(key, artifactVersions);
+            }
+            artifactVersions.add(artifact.getBaseVersion());
+        }
+        for (Map.Entry<String, Metadata> entry
+                : getVersionsMetadata(artifacts).entrySet()) {
+            final Metadata metadata = entry.getValue();
+            final File file = new File(basedir,
+                    RepositoryLayout.getPath(metadata));
+            try {
+                VersionsMetadata.addVersions(file, metadata.getGroupId(),
+                        metadata.getArtifactId(), versions.get(entry.getKey()));
+                Checksums.write(file, Checksums.compute(file,
+                        Checksums.REPOSITORY_ALGORITHMS));
+            } catch (IOException e) {
+                throw new DeploymentException("Failed to update " + file, e);
+            }
+        }
+        return result;
+    }
+
+    private static File stage(final File source, final File target)
+            throws IOException {
+
+        final File directory = target.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        final File staging = ArtifactFiles.getStagingFile(target);
+        staging.delete();
+        Checksums.write(staging, ArtifactFiles.copy(source, staging, false,
+                Checksums.REPOSITORY_ALGORITHMS));
+        return staging;
+    }
+
+    /**
+     * Rename the staged file and then its staged checksums into place, so
+     * no checksum is ever visible next to a file it does not describe.
+     */
+    private static void publish(final File target) throws IOException {
+        final File staging = ArtifactFiles.getStagingFile(target);
+        ArtifactFiles.rename(staging, target);
+        for (String algorithm : Checksums.REPOSITORY_ALGORITHMS) {
+            final String extension = '.' + Checksums.getExtension(algorithm);
+            ArtifactFiles.rename(new File(staging.getPath() + extension),
+                    new File(target.getPath() + extension));
+        }
+    }
+
+    private static void discard(final File staging) {
+        for (String algorithm : Checksums.REPOSITORY_ALGORITHMS) {
+            new File(staging.getPath() + '.'
+                    + Checksums.getExtension(algorithm)).delete();
+        }
+        staging.delete();
+    }
+}
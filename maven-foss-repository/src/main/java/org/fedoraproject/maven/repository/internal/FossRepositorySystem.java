@@ -22,17 +22,42 @@
  */
 package org.fedoraproject.maven.repository.internal;
 
-import static java.util.Collections.singletonList;
 import static org.apache.maven.artifact.Artifact.LATEST_VERSION;
-import static org.fedoraproject.maven.repository.internal.RepositorySystemSessionHelper.validateSession;
-
+import static org.fedoraproject.maven.repository.internal.ResolutionMetrics.WHOLE_CALL;
+import static org.fedoraproject.maven.repository.internal.ResolutionMetrics.Outcome.CACHED;
+import static org.fedoraproject.maven.repository.internal.ResolutionMetrics.Outcome.CACHED_MISS;
+import static org.fedoraproject.maven.repository.internal.ResolutionMetrics.Outcome.FOUND;
+import static org.fedoraproject.maven.repository.internal.ResolutionMetrics.Outcome.MISSED;
+import static org.fedoraproject.maven.repository.internal.ResolutionStage.EXACT;
+import static org.fedoraproject.maven.repository.internal.ResolutionStage.JPP;
+import static org.fedoraproject.maven.repository.internal.ResolutionStage.LATEST;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.fedoraproject.maven.repository.ResolutionTrace;
+import org.fedoraproject.maven.repository.jpp.MavenJPackageDepmap;
 import org.sonatype.aether.RepositorySystem;
 import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.SyncContext;
@@ -43,6 +68,7 @@ import org.sonatype.aether.collection.DependencyCollectionException;
 import org.sonatype.aether.deployment.DeployRequest;
 import org.sonatype.aether.deployment.DeployResult;
 import org.sonatype.aether.deployment.DeploymentException;
+import org.sonatype.aether.graph.Dependency;
 import org.sonatype.aether.graph.DependencyFilter;
 import org.sonatype.aether.graph.DependencyNode;
 import org.sonatype.aether.impl.ArtifactDescriptorReader;
@@ -53,6 +79,8 @@ import org.sonatype.aether.impl.internal.DefaultRepositorySystem;
 import org.sonatype.aether.installation.InstallRequest;
 import org.sonatype.aether.installation.InstallResult;
 import org.sonatype.aether.installation.InstallationException;
+import org.sonatype.aether.metadata.Metadata;
+import org.sonatype.aether.repository.LocalArtifactRegistration;
 import org.sonatype.aether.repository.LocalRepository;
 import org.sonatype.aether.repository.LocalRepositoryManager;
 import org.sonatype.aether.repository.MirrorSelector;
@@ -75,9 +103,12 @@ import org.sonatype.aether.resolution.VersionRequest;
 import org.sonatype.aether.resolution.VersionResolutionException;
 import org.sonatype.aether.resolution.VersionResult;
 import org.sonatype.aether.spi.log.Logger;
+import org.sonatype.aether.transfer.ChecksumFailureException;
+import org.sonatype.aether.transfer.MetadataNotFoundException;
 import org.sonatype.aether.spi.log.NullLogger;
 import org.sonatype.aether.util.DefaultRepositorySystemSession;
 import org.sonatype.aether.util.artifact.DefaultArtifact;
+import org.sonatype.aether.util.metadata.DefaultMetadata;
 import org.sonatype.aether.version.Version;
 
 /**
@@ -88,6 +119,23 @@ public class FossRepositorySystem
         implements ArtifactDescriptorReader, ArtifactResolver,
         DependencyCollector, RepositorySystem, VersionRangeResolver {
 
+    /**
+     * Key of the {@link DependencyNode} data which names the stage that
+     * produced the node: "EXACT", "LATEST" or "JPP".
+     */
+    public static final String PROVENANCE_KEY = "fre.provenance";
+
+    private static final List<ResolutionStage> EXACT_STAGES =
+            stages(EXACT);
+    private static final List<ResolutionStage> FOSS_STAGES =
+            stages(EXACT, LATEST);
+    private static final List<ResolutionStage> EXACT_JPP_STAGES =
+            stages(EXACT, JPP);
+    private static final List<ResolutionStage> JPP_FIRST_STAGES =
+            stages(EXACT, JPP, LATEST);
+    private static final List<ResolutionStage> ALL_STAGES =
+            stages(EXACT, LATEST, JPP);
+
     @Requirement
     private Logger logger = NullLogger.INSTANCE;
 
@@ -104,16 +152,80 @@ public class FossRepositorySystem
 
     private final RemoteRepository fossRepository;
 
+    // the repositories of every request passed on, which is just the FOSS one
+    private final List<RemoteRepository> fossRepositories;
+
+    // the FOSS repository directory, or null if it is not a file: URL
+    private final File fossBasedir;
+
+    // one of "session", "build" or "none"
+    private String cacheScope;
+
+    private final int maxDescriptors;
+
+    private final SessionContext buildContext;
+
+
+    private final boolean installLinks = Boolean.parseBoolean(
+            System.getProperty("fre.install.links", "false"));
+
+    private final SyncLocks syncLocks = new SyncLocks(
+            Integer.getInteger("fre.sync.stripes", 64),
+            Boolean.parseBoolean(System.getProperty("fre.sync.fileLocks", "true")));
+
+    private int resolveThreads;
+
+    private ExecutorService resolveExecutor;
+
+    private int collectThreads;
+
+    private ExecutorService collectExecutor;
+
+    private final int deployThreads = Integer.getInteger("fre.deploy.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    private ExecutorService deployExecutor;
+
+    private final ChecksumVerifier checksumVerifier;
+
+    private final int checksumThreads = Integer.getInteger(
+            "fre.checksums.threads", Runtime.getRuntime().availableProcessors());
+
+    private ExecutorService checksumExecutor;
+
+    private ResolutionMetrics metrics = ResolutionMetrics.getInstance();
+
+    private final Map<RepositorySystemSession, SessionContext> sessionContexts =
+        new WeakHashMap<RepositorySystemSession, SessionContext>();
+
 //    private WorkspaceReader jppRepository = new JavadirWorkspaceReader();
     private final JPPLocalRepositoryManager jppRepositoryManager =
         new JPPLocalRepositoryManager();
 
     public FossRepositorySystem() {
         this.useJpp = Boolean.getBoolean("fre.useJpp");
+        this.cacheScope = System.getProperty("fre.cache.scope", "session");
+        this.resolveThreads = Integer.getInteger("fre.resolve.threads", 1);
+        this.collectThreads = Integer.getInteger("fre.collect.threads", 1);
+        this.maxDescriptors = Integer.getInteger("fre.cache.descriptors", 2000);
+        this.buildContext = new SessionContext(maxDescriptors);
 
         // we only want to use this repository
         this.fossRepository = new RemoteRepository("foss", "default",
                 System.getProperty("fre.repo", "file:/usr/share/maven/repository"));
+        this.fossRepositories = Collections.singletonList(fossRepository);
+        this.fossBasedir = toBasedir(fossRepository);
+
+        final String checksumCache = System.getProperty("fre.checksums.cache",
+                System.getProperty("user.home") + "/.m2/fre-checksums.cache");
+        this.checksumVerifier = new ChecksumVerifier(
+                ChecksumVerifier.Policy.of(
+                        System.getProperty("fre.checksums", "ignore")),
+                "none".equals(checksumCache) ? null : new File(checksumCache));
+    }
+
+    private static List<ResolutionStage> stages(ResolutionStage... stages) {
+        return Collections.unmodifiableList(Arrays.asList(stages));
     }
 
     private void assertFedoraRepository(List<RemoteRepository> repositories) {
@@ -137,6 +249,55 @@ public class FossRepositorySystem
         logger.debug(msg);
     }
 
+    private void record(final String entryPoint, final Object stage,
+            final boolean found, final Object subject, final long start) {
+
+        record(entryPoint, stage, found ? FOUND : MISSED, subject, start);
+    }
+
+    /**
+     * Count and trace a call, or a stage of a call, that started at the
+     * given {@link System#nanoTime()}.
+     *
+     * @param subject what the call was about, for the trace
+     */
+    private void record(final String entryPoint, final Object stage,
+            final ResolutionMetrics.Outcome outcome, final Object subject,
+            final long start) {
+
+        final long nanos = System.nanoTime() - start;
+        metrics.record(entryPoint, stage, outcome, nanos);
+        if (ResolutionTrace.ENABLED) {
+            ResolutionTrace.event(outcome.name().toLowerCase(), entryPoint,
+                    stage, subject, nanos);
+        }
+    }
+
+    private static void traceAttempt(final String entryPoint,
+            final ResolutionStage stage, final Artifact artifact) {
+
+        if (ResolutionTrace.ENABLED) {
+            ResolutionTrace.event("attempt", entryPoint, stage, artifact, -1);
+        }
+    }
+
+    private static File toBasedir(final RemoteRepository repository) {
+        if (!"file".equals(repository.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(new URI(repository.getUrl()));
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the FOSS repository holds a POM for the given version,
+     * without building its model.
+     */
     private boolean hasArtifact(
             final RepositorySystemSession session,
             final VersionRangeRequest request,
@@ -146,50 +307,26 @@ public class FossRepositorySystem
             return false;
         }
 
-        /* this will blow, because it'll try to find a jar for a pom artifact
-        try {
-            final Artifact artifact = request.getArtifact();
-            final Artifact versionedArtifact =
-                    new DefaultArtifact(artifact.getGroupId(),
-                            artifact.getArtifactId(), artifact.getClassifier(),
-                            artifact.getExtension(), version.toString(),
-                            artifact.getProperties(), artifact.getFile());
-
-            final ArtifactRequest alternateRequest =
-                    new ArtifactRequest(versionedArtifact,
-                            singletonList(fossRepository),
-                            request.getRequestContext());
-
-            alternateRequest.setTrace(request.getTrace());
-
-            final ArtifactResult result =
-                    artifactResolver.resolveArtifact(session, alternateRequest);
-
-            if (result.getExceptions().isEmpty())
-                return true;
-        } catch (ArtifactResolutionException e) {
-            throw new RuntimeException(e);
+        final Artifact artifact = request.getArtifact();
+        final Artifact pom = new DefaultArtifact(artifact.getGroupId(),
+                artifact.getArtifactId(), "pom", version.toString());
+        if (fossBasedir != null) {
+            return new File(fossBasedir, RepositoryLayout.getPath(pom))
+                    .isFile();
         }
-        */
 
+        // not a local repository, so we have to ask the resolver
         try {
-            final ArtifactDescriptorRequest alternateRequest =
-                    new ArtifactDescriptorRequest(
-                            request.getArtifact(),
-                            singletonList(fossRepository),
-                            request.getRequestContext())
-                            .setTrace(request.getTrace());
+            final ArtifactRequest alternateRequest = new ArtifactRequest(pom,
+                    fossRepositories,
+                    request.getRequestContext())
+                    .setTrace(request.getTrace());
 
-            final ArtifactDescriptorResult result =
-                    delegate.readArtifactDescriptor(session, alternateRequest);
-            if (result.getExceptions().isEmpty()) {
-                return true;
-            }
-        } catch (ArtifactDescriptorException e) {
-            throw new RuntimeException(e);
+            return artifactResolver.resolveArtifact(session, alternateRequest)
+                    .isResolved();
+        } catch (ArtifactResolutionException e) {
+            return false;
         }
-
-        return false;
     }
 
     public FossRepositorySystem setDefaultRepositorySystem(
@@ -221,6 +358,59 @@ public class FossRepositorySystem
         return this;
     }
 
+    public FossRepositorySystem setCacheScope(String value) {
+        if (!"session".equals(value) && !"build".equals(value)
+                && !"none".equals(value)) {
+            throw new IllegalArgumentException(
+                    "cache scope must be one of session, build or none");
+        }
+        this.cacheScope = value;
+        return this;
+    }
+
+    public synchronized FossRepositorySystem setResolveThreads(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(
+                    "number of resolve threads must be at least 1");
+        }
+        if (resolveExecutor != null) {
+            resolveExecutor.shutdown();
+            resolveExecutor = null;
+        }
+        this.resolveThreads = value;
+        return this;
+    }
+
+    public synchronized FossRepositorySystem setCollectThreads(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(
+                    "number of collect threads must be at least 1");
+        }
+        if (collectExecutor != null) {
+            collectExecutor.shutdown();
+            collectExecutor = null;
+        }
+        this.collectThreads = value;
+        return this;
+    }
+
+    public FossRepositorySystem setDependencyCollector(
+            DependencyCollector dependencyCollector) {
+
+        if (dependencyCollector == null) {
+            throw new IllegalArgumentException(
+                    "dependency collector has not been specified");
+        }
+
+        this.dependencyCollector = dependencyCollector;
+        return this;
+    }
+
+    FossRepositorySystem setMetrics(ResolutionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
     public FossRepositorySystem setLogger(Logger logger) {
         this.logger = (logger != null) ? logger : NullLogger.INSTANCE;
         return this;
@@ -234,6 +424,47 @@ public class FossRepositorySystem
         return jppRepositoryManager;
     }
 
+    /**
+     * Validate the session once per session context and return the context.
+     * Maven configures a session before it is handed out, so a session that
+     * passed once passes again.
+     */
+    private SessionContext getValidatedSessionContext(
+            final RepositorySystemSession session) {
+
+        if (session == null) {
+            // fails before the null session gets a context
+            RepositorySystemSessionHelper.validateSession(session);
+        }
+        final SessionContext context = getSessionContext(session);
+        if (!context.isValidated()) {
+            RepositorySystemSessionHelper.validateSession(session);
+            context.setValidated();
+        }
+        return context;
+    }
+
+    /**
+     * @return the context of the session; even without caching there is one
+     *         per session, which holds the state of running collections
+     */
+    SessionContext getSessionContext(final RepositorySystemSession session) {
+        synchronized (sessionContexts) {
+            SessionContext context = sessionContexts.get(session);
+            if (context == null) {
+                if ("none".equals(cacheScope)) {
+                    context = SessionContext.withoutCaches();
+                } else if ("build".equals(cacheScope)) {
+                    context = new SessionContext(buildContext);
+                } else {
+                    context = new SessionContext(maxDescriptors);
+                }
+                sessionContexts.put(session, context);
+            }
+            return context;
+        }
+    }
+
     @Override
     public VersionRangeResult resolveVersionRange(
             RepositorySystemSession session,
@@ -242,11 +473,40 @@ public class FossRepositorySystem
 
         debugf("resolveVersionRange %s", request);
 //        assertFedoraRepository(request.getRepositories());
+        final VersionRangeCache versionRanges =
+                getSessionContext(session).getVersionRanges();
+        final String key = NegativeLookupCache.key(request.getArtifact());
+        final long start = System.nanoTime();
+        final VersionRangeResult cached = versionRanges.get(key, request);
+        if (cached != null) {
+            record("resolveVersionRange", WHOLE_CALL, CACHED,
+                    request.getArtifact(), start);
+            return cached;
+        }
+
+        boolean found = false;
+        try {
+            final VersionRangeResult result =
+                    resolveVersionRangeUncached(session, request);
+            versionRanges.put(key, result);
+            found = true;
+            return result;
+        } finally {
+            record("resolveVersionRange", WHOLE_CALL, found,
+                    request.getArtifact(), start);
+        }
+    }
+
+    private VersionRangeResult resolveVersionRangeUncached(
+            RepositorySystemSession session,
+            VersionRangeRequest request)
+            throws VersionRangeResolutionException {
+
         try {
             // try FOSS local repo
             final VersionRangeRequest alternateRequest =
                     new VersionRangeRequest(request.getArtifact(),
-                            singletonList(fossRepository),
+                            fossRepositories,
                             request.getRequestContext())
                             .setTrace(request.getTrace());
 
@@ -284,8 +544,8 @@ public class FossRepositorySystem
             // TODO: what if highestVersion is null?
             result.setRepository(highestVersion,
                     jppRepositoryManager.getRepository());
-            logger.warn("Could not resolve version range " + request +
-                    ", using JPP " + result);
+            debugf("Could not resolve version range %s, using JPP %s",
+                    request, result);
             return result;
         } catch (VersionRangeResolutionException e) {
             throw e;
@@ -303,7 +563,7 @@ public class FossRepositorySystem
             // try FOSS repo
             final VersionRequest alternateRequest =
                     new VersionRequest(request.getArtifact(),
-                            singletonList(fossRepository),
+                            fossRepositories,
                             request.getRequestContext())
                             .setTrace(request.getTrace());
 
@@ -327,82 +587,79 @@ public class FossRepositorySystem
             ArtifactDescriptorRequest request)
             throws ArtifactDescriptorException {
 
-        ArtifactDescriptorException originalException = null;
-        final Artifact artifact = request.getArtifact();
-        // try FOSS local repo
-        {
-            try {
-                final ArtifactDescriptorRequest alternateRequest =
-                        new ArtifactDescriptorRequest(request.getArtifact(),
-                                singletonList(fossRepository),
-                                request.getRequestContext())
-                                .setTrace(request.getTrace());
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            final SessionContext context = getSessionContext(session);
+            final String key = NegativeLookupCache.key(request.getArtifact());
+            awaitPrefetch(context.getPrefetches().get(key));
 
-                final ArtifactDescriptorResult result =
-                        delegate.readArtifactDescriptor(session, alternateRequest);
-                if (result.getExceptions().isEmpty()) {
-                    return result;
-                }
-            } catch (ArtifactDescriptorException e) {
-                originalException = e;
+            final ArtifactDescriptorResult result =
+                    readArtifactDescriptor(context, session, request);
+            if (context.isCollecting()) {
+                context.addManaged(result.getManagedDependencies());
+                prefetchDependencies(context, session, request, result);
             }
+            found = true;
+            return result;
+        } finally {
+            record("readArtifactDescriptor", WHOLE_CALL, found,
+                    request.getArtifact(), start);
         }
-        // try FOSS local repo with LATEST
-        if (!artifact.getVersion().equals(LATEST_VERSION))
-        {
-            try {
-                final Artifact alternateArtifact =
-                        artifact.setVersion(LATEST_VERSION);
+    }
 
-                final ArtifactDescriptorRequest alternateRequest =
-                        new ArtifactDescriptorRequest(alternateArtifact,
-                                singletonList(fossRepository),
-                                request.getRequestContext())
-                                .setTrace(request.getTrace());
+    private ArtifactDescriptorResult readArtifactDescriptor(
+            final SessionContext context,
+            final RepositorySystemSession session,
+            final ArtifactDescriptorRequest request)
+            throws ArtifactDescriptorException {
 
-                final ArtifactDescriptorResult result =
-                        delegate.readArtifactDescriptor(session, alternateRequest);
-                if (result.getExceptions().isEmpty()) {
-                    logger.warn("Could not find artifact descriptor "
-                            + artifact + ", using LATEST "
-                            + result.getArtifact());
-                    return result;
-                }
-            } catch (ArtifactDescriptorException e) {
-                logger.debug("LATEST resolution of " + artifact + " failed", e);
+        ArtifactDescriptorException originalException = null;
+        final Artifact artifact = request.getArtifact();
+        final NegativeLookupCache<ArtifactDescriptorException> misses =
+                context.getDescriptorMisses();
+        final DescriptorCache descriptors = context.getDescriptors();
+        final String key = NegativeLookupCache.key(artifact);
+        for (ResolutionStage stage : getStages(artifact)) {
+            final long start = System.nanoTime();
+            if (misses.contains(stage, key)) {
+                record("readArtifactDescriptor", stage, CACHED_MISS, artifact,
+                        start);
                 if (originalException == null) {
-                    originalException = e;
+                    originalException = misses.getCause(stage, key);
                 }
+                continue;
             }
-        }
-        // try JPP local repo
-        if (useJpp) {
-            // use maven as much as possible
-            final RepositorySystemSession alternateSession = openJpp(session);
+            final ArtifactDescriptorResult cached = descriptors.get(stage, key);
+            if (cached != null) {
+                record("readArtifactDescriptor", stage, CACHED, artifact, start);
+                recordProvenance(context, key, stage, cached);
+                return cached;
+            }
+            traceAttempt("readArtifactDescriptor", stage, artifact);
             try {
-                final ArtifactDescriptorRequest alternateRequest =
-                        new ArtifactDescriptorRequest(request.getArtifact(),
-                                singletonList(fossRepository),
-                                request.getRequestContext());
-
-                alternateRequest.setTrace(request.getTrace());
-
                 final ArtifactDescriptorResult result =
-                        delegate.readArtifactDescriptor(alternateSession,
-                                alternateRequest);
-//                logger.warn("result from JPP " + result);
+                        readArtifactDescriptor(stage, context, session, request);
+                record("readArtifactDescriptor", stage,
+                        result.getExceptions().isEmpty(), artifact, start);
                 if (result.getExceptions().isEmpty()) {
-                    // TODO: I may want to muck the result a bit to make sure JPP is also used for resolveArtifact
-                    // JPP probably did not return the proper version, which
-                    // makes the MavenPluginValidator barf
-                    // lets muck it
-//                    result.setArtifact(new JPPArtifact(result.getArtifact()));
-                    logger.warn("Could not find artifact descriptor "
-                            + artifact + ", using JPP " + result.getArtifact());
+                    descriptors.put(stage, key, result);
+                    recordProvenance(context, key, stage, result);
+                    if (stage != EXACT && logger.isDebugEnabled()) {
+                        logger.debug("Could not find artifact descriptor "
+                                + artifact + ", using " + stage + " "
+                                + result.getArtifact());
+                    }
                     return result;
                 }
+                misses.add(stage, key, null);
             } catch (ArtifactDescriptorException e) {
-                logger.debug("JPP resolution of " + artifact + " failed", e);
+                record("readArtifactDescriptor", stage, MISSED, artifact, start);
+                if (stage != EXACT) {
+                    logger.debug(stage + " resolution of " + artifact
+                            + " failed", e);
+                }
+                misses.add(stage, key, e);
                 if (originalException == null) {
                     originalException = e;
                 }
@@ -418,6 +675,162 @@ public class FossRepositorySystem
                 "FossRepositorySystem.readArtifactDescriptor");
     }
 
+    private static void recordProvenance(
+            final SessionContext context,
+            final String key,
+            final ResolutionStage stage,
+            final ArtifactDescriptorResult result) {
+
+        context.getProvenance().put(key, stage);
+        // the collector puts the artifact of the descriptor into the graph
+        if (result.getArtifact() != null) {
+            context.getProvenance().put(
+                    NegativeLookupCache.key(result.getArtifact()), stage);
+        }
+    }
+
+    /**
+     * Wait for the prefetch of a descriptor the collector wants now. A
+     * prefetch still queued behind others is run right here instead, it
+     * does nothing once the pool gets to it.
+     */
+    private static void awaitPrefetch(final FutureTask<?> prefetch) {
+        if (prefetch == null) {
+            return;
+        }
+        try {
+            prefetch.run();
+            prefetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the prefetch swallows its own failures
+        }
+    }
+
+    /**
+     * Read the descriptors of the dependencies on the collect executor, so
+     * they are in the descriptor cache by the time the collector gets to
+     * them. The collector itself still decides what goes into the graph.
+     */
+    private void prefetchDependencies(
+            final SessionContext context,
+            final RepositorySystemSession session,
+            final ArtifactDescriptorRequest request,
+            final ArtifactDescriptorResult result) {
+
+        // without a descriptor cache nobody would see the prefetched ones
+        if (collectThreads < 2 || !context.isCaching()) {
+            return;
+        }
+
+        for (Dependency dependency : result.getDependencies()) {
+            // these are left out of the graph by the default selectors
+            if (dependency.isOptional()
+                    || "test".equals(dependency.getScope())
+                    || "provided".equals(dependency.getScope())) {
+                continue;
+            }
+
+            // ranges need to be resolved by the collector first
+            final Artifact artifact = dependency.getArtifact();
+            final String version = artifact.getVersion();
+            if (version.startsWith("[") || version.startsWith("(")) {
+                continue;
+            }
+
+            // the collector may ask for a managed version instead
+            if (context.isManaged(artifact)) {
+                continue;
+            }
+
+            final String key = NegativeLookupCache.key(artifact);
+            if (context.getPrefetches().containsKey(key)) {
+                continue;
+            }
+
+            final ArtifactDescriptorRequest prefetchRequest =
+                    new ArtifactDescriptorRequest(artifact,
+                            request.getRepositories(),
+                            request.getRequestContext())
+                            .setTrace(request.getTrace());
+
+            final FutureTask<Void> prefetch = new FutureTask<Void>(
+                    new Runnable() {
+                        public void run() {
+                            prefetch(context, session, prefetchRequest);
+                        }
+                    }, null);
+
+            if (context.getPrefetches().putIfAbsent(key, prefetch) == null) {
+                getCollectExecutor().execute(prefetch);
+            }
+        }
+    }
+
+    private void prefetch(
+            final SessionContext context,
+            final RepositorySystemSession session,
+            final ArtifactDescriptorRequest request) {
+
+        // the collection is over, nobody is going to ask for it
+        if (!context.isCollecting()) {
+            return;
+        }
+
+        try {
+            final ArtifactDescriptorResult result =
+                    readArtifactDescriptor(context, session, request);
+            context.addManaged(result.getManagedDependencies());
+            prefetchDependencies(context, session, request, result);
+        } catch (ArtifactDescriptorException e) {
+            // the collector will get the same exception from the miss cache
+            logger.debug("Prefetch of " + request.getArtifact()
+                    + " failed", e);
+        } catch (RuntimeException e) {
+            logger.debug("Prefetch of " + request.getArtifact()
+                    + " failed", e);
+        }
+    }
+
+    private synchronized ExecutorService getCollectExecutor() {
+        if (collectExecutor == null) {
+            collectExecutor = Executors.newFixedThreadPool(collectThreads,
+                    new DaemonThreadFactory("fre-collect"));
+        }
+        return collectExecutor;
+    }
+
+    private ArtifactDescriptorResult readArtifactDescriptor(
+            final ResolutionStage stage,
+            final SessionContext context,
+            final RepositorySystemSession session,
+            final ArtifactDescriptorRequest request)
+            throws ArtifactDescriptorException {
+
+        final Artifact artifact = stage == LATEST
+                ? request.getArtifact().setVersion(LATEST_VERSION)
+                : request.getArtifact();
+        final ArtifactDescriptorRequest alternateRequest =
+                new ArtifactDescriptorRequest(artifact,
+                        fossRepositories,
+                        request.getRequestContext())
+                        .setTrace(request.getTrace());
+
+        if (stage != JPP) {
+            return delegate.readArtifactDescriptor(session, alternateRequest);
+        }
+
+        // use maven as much as possible
+        // TODO: I may want to muck the result a bit to make sure JPP is also used for resolveArtifact
+        // JPP probably did not return the proper version, which
+        // makes the MavenPluginValidator barf
+        // lets muck it
+//        result.setArtifact(new JPPArtifact(result.getArtifact()));
+        return delegate.readArtifactDescriptor(openJpp(context, session),
+                alternateRequest);
+    }
+
     @Override
     public CollectResult collectDependencies(
             RepositorySystemSession session,
@@ -425,77 +838,60 @@ public class FossRepositorySystem
             throws DependencyCollectionException {
 
         debugf("collectDependencies %s", request);
-        validateSession(session);
-
-        // delegate has been wired up to come back to us, so this must be a real
-        // implementation
-
-        DependencyCollectionException originalException = null;
 
-        // TODO: work in progress, we need to aggregate all
-        // try JPP local repo
-        if (useJpp) {
-            // use maven as much as possible
-            final RepositorySystemSession alternateSession = openJpp(session);
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            final SessionContext context = getValidatedSessionContext(session);
+
+            // delegate has been wired up to come back to us, so this must be a real
+            // implementation
+
+            // a single traversal is enough, readArtifactDescriptor falls back
+            // from the FOSS repository to JPP for every node
+            final CollectRequest alternateRequest = new CollectRequest()
+                    .setRoot(request.getRoot())
+                    .setDependencies(request.getDependencies())
+                    .setManagedDependencies(request.getManagedDependencies())
+                    .setRequestContext(request.getRequestContext())
+                    .setTrace(request.getTrace())
+                    .setRepositories(fossRepositories);
+
+            final CollectResult result;
             try {
-                final CollectRequest alternateRequest =
-                        new CollectRequest(request.getRoot(),
-                                request.getDependencies(),
-                                singletonList(fossRepository))
-                                .setManagedDependencies(request.getManagedDependencies())
-                                .setTrace(request.getTrace());
-
-                final CollectResult result =
-                        dependencyCollector.collectDependencies(
-                                alternateSession, alternateRequest);
-
-                if (result.getExceptions().isEmpty()
-                        && result.getRoot() != null) {
-                    logger.warn("collectDependencies: result from JPP " + result);
-//                    logger.warn("TODO");
-                    return result;
-                }
+                result = collect(session, alternateRequest);
             } catch (DependencyCollectionException e) {
-                logger.debug("JPP collect dependencies of " + request +
-                        " failed", e);
-                originalException = e;
+                logger.debug("collect dependencies failed ", e);
+                throw e;
             }
-        }
 
-        // try FOSS local repo
-        {
-            try {
-                final CollectRequest alternateRequest = new CollectRequest()
-                        .setRoot(request.getRoot())
-                        .setDependencies(request.getDependencies())
-                        .setManagedDependencies(request.getManagedDependencies())
-                        .setRequestContext(request.getRequestContext())
-                        .setTrace(request.getTrace())
-                        .setRepositories(singletonList(fossRepository));
-
-                final CollectResult result =
-                        dependencyCollector.collectDependencies(session,
-                                alternateRequest);
-
-                logger.warn("collectDependencies: result = " + result);
-                if (result.getExceptions().isEmpty()) {
-                    return result;
-                }
-            } catch (DependencyCollectionException e) {
-                logger.warn("collect dependencies failed ", e);
-                if (originalException == null) {
-                    originalException = e;
-                }
+            if (result.getRoot() != null) {
+                result.getRoot().accept(new ProvenanceVisitor(context));
             }
+            found = true;
+            return result;
+        } finally {
+            record("collectDependencies", WHOLE_CALL, found,
+                    request.getRoot(), start);
         }
+    }
 
-        if (originalException != null) {
-            throw originalException;
-        }
+    /**
+     * Run the collector, prefetching descriptors while it walks the graph.
+     */
+    private CollectResult collect(
+            final RepositorySystemSession session,
+            final CollectRequest request)
+            throws DependencyCollectionException {
 
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "FossRepositorySystem.collectDependencies");
+        final SessionContext context = getSessionContext(session);
+        context.beginCollection();
+        context.addManaged(request.getManagedDependencies());
+        try {
+            return dependencyCollector.collectDependencies(session, request);
+        } finally {
+            context.endCollection();
+        }
     }
 
     @Override
@@ -542,97 +938,78 @@ public class FossRepositorySystem
             ArtifactRequest request)
             throws ArtifactResolutionException {
 
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            final List<ArtifactResult> fossResults =
+                    new ArrayList<ArtifactResult>(1);
+            final ArtifactResult result =
+                    resolveArtifact(session, request, fossResults);
+            verifyChecksums(fossResults);
+            found = true;
+            return result;
+        } finally {
+            record("resolveArtifact", WHOLE_CALL, found,
+                    request.getArtifact(), start);
+        }
+    }
+
+    /**
+     * Resolve an artifact through the stages, without verifying checksums.
+     *
+     * @param fossResults receives the result if it came from the FOSS
+     *        repository
+     */
+    private ArtifactResult resolveArtifact(
+            final RepositorySystemSession session,
+            final ArtifactRequest request,
+            final Collection<ArtifactResult> fossResults)
+            throws ArtifactResolutionException {
+
         debugf("resolveArtifact %s", request);
-        validateSession(session);
+        final SessionContext context = getValidatedSessionContext(session);
 
         // delegate has been wired up to come back to us, so this must be a real
         // implementation
 
         ArtifactResolutionException originalException = null;
         final Artifact artifact = request.getArtifact();
-
-        // try FOSS local repo
-        {
-            try {
-                final ArtifactRequest alternateRequest =
-                        new ArtifactRequest(request.getArtifact(),
-                                singletonList(fossRepository),
-                                request.getRequestContext())
-                                .setDependencyNode(request.getDependencyNode())
-                                .setTrace(request.getTrace());
-
-                final ArtifactResult result = artifactResolver.resolveArtifact(
-                        session, alternateRequest);
-
-                // A successful result can contain exceptions
-                //if (result.getExceptions().isEmpty()) {
-                    return result;
-                //}
-            } catch (ArtifactResolutionException e) {
-                originalException = e;
-            }
-        }
-
-        // try FOSS local repo with LATEST
-        if (!artifact.getVersion().equals(LATEST_VERSION))
-//            throw new IllegalStateException("NYI: LATEST should not appear " +
-//                    "during resolveArtifact, should it?");
-        {
-            try {
-                final Artifact alternateArtifact =
-                        new DefaultArtifact(artifact.getGroupId(),
-                                artifact.getArtifactId(), artifact.getClassifier(),
-                                artifact.getExtension(), LATEST_VERSION,
-                                artifact.getProperties(), artifact.getFile());
-
-                final ArtifactRequest alternateRequest =
-                        new ArtifactRequest(alternateArtifact,
-                                Collections.singletonList(fossRepository),
-                                request.getRequestContext())
-                                .setDependencyNode(request.getDependencyNode())
-                                .setTrace(request.getTrace());
-
-                final ArtifactResult result = artifactResolver.resolveArtifact(
-                        session, alternateRequest);
-
-                // A successful result can contain exceptions
-                //if (result.getExceptions().isEmpty()) {
-                    logger.warn("Could not find artifact " + artifact +
-                            ", using LATEST " + result.getArtifact());
-                    return result;
-                //}
-            } catch (ArtifactResolutionException e) {
-                logger.debug("LATEST resolution of " + artifact + " failed", e);
+        final NegativeLookupCache<ArtifactResolutionException> misses =
+                context.getArtifactMisses();
+        final String key = NegativeLookupCache.key(artifact);
+        for (ResolutionStage stage : getStages(artifact)) {
+            final long start = System.nanoTime();
+            if (misses.contains(stage, key)) {
+                record("resolveArtifact", stage, CACHED_MISS, artifact, start);
                 if (originalException == null) {
-                    originalException = e;
+                    originalException = misses.getCause(stage, key);
                 }
+                continue;
             }
-        }
-
-        // try JPP local repo
-        if (useJpp) {
-            // use maven as much as possible
-            final RepositorySystemSession alternateSession = openJpp(session);
+            traceAttempt("resolveArtifact", stage, artifact);
             try {
-                final ArtifactRequest alternateRequest =
-                        new ArtifactRequest(request.getArtifact(),
-                                singletonList(fossRepository),
-                                request.getRequestContext())
-                                .setDependencyNode(request.getDependencyNode())
-                                .setTrace(request.getTrace());
+                final ArtifactResult result =
+                        resolveArtifact(stage, context, session, request);
+                record("resolveArtifact", stage, FOUND, artifact, start);
 
-                final ArtifactResult result = artifactResolver.resolveArtifact(
-                        alternateSession, alternateRequest);
+                if (stage != JPP) {
+                    fossResults.add(result);
+                }
 
                 // A successful result can contain exceptions
-                //if (result.getExceptions().isEmpty()) {
-                    logger.warn("Could not find artifact " + artifact + " in " +
-                            fossRepository + ", using JPP " +
-                            result.getArtifact());
-                    return result;
-                //}
+                if (stage != EXACT && logger.isDebugEnabled()) {
+                    logger.debug("Could not find artifact " + artifact + " in "
+                            + fossRepository + ", using " + stage + " "
+                            + result.getArtifact());
+                }
+                return result;
             } catch (ArtifactResolutionException e) {
-                logger.debug("JPP resolution of " + artifact + " failed", e);
+                record("resolveArtifact", stage, MISSED, artifact, start);
+                if (stage != EXACT) {
+                    logger.debug(stage + " resolution of " + artifact
+                            + " failed", e);
+                }
+                misses.add(stage, key, e);
                 if (originalException == null) {
                     originalException = e;
                 }
@@ -648,6 +1025,54 @@ public class FossRepositorySystem
                 "FossRepositorySystem.resolveArtifact");
     }
 
+    private ArtifactResult resolveArtifact(
+            final ResolutionStage stage,
+            final SessionContext context,
+            final RepositorySystemSession session,
+            final ArtifactRequest request)
+            throws ArtifactResolutionException {
+
+        Artifact artifact = request.getArtifact();
+        if (stage == LATEST) {
+            artifact = new DefaultArtifact(artifact.getGroupId(),
+                    artifact.getArtifactId(), artifact.getClassifier(),
+                    artifact.getExtension(), LATEST_VERSION,
+                    artifact.getProperties(), artifact.getFile());
+        }
+        final ArtifactRequest alternateRequest =
+                new ArtifactRequest(artifact,
+                        fossRepositories,
+                        request.getRequestContext())
+                        .setDependencyNode(request.getDependencyNode())
+                        .setTrace(request.getTrace());
+
+        // use maven as much as possible
+        return artifactResolver.resolveArtifact(
+                stage == JPP ? openJpp(context, session) : session,
+                alternateRequest);
+    }
+
+    /**
+     * Returns the stages of the fallback chain to try for the given artifact.
+     */
+    private List<ResolutionStage> getStages(final Artifact artifact) {
+        final boolean isLatest = artifact.getVersion().equals(LATEST_VERSION);
+        if (!useJpp) {
+            return isLatest ? EXACT_STAGES : FOSS_STAGES;
+        }
+        if (isLatest) {
+            return EXACT_JPP_STAGES;
+        }
+        // a compat version explicitly mapped by the depmap is in JPP, LATEST
+        // would only find the wrong version
+        if (MavenJPackageDepmap.getInstance().hasVersionedMapping(
+                artifact.getGroupId(), artifact.getArtifactId(),
+                artifact.getVersion())) {
+            return JPP_FIRST_STAGES;
+        }
+        return ALL_STAGES;
+    }
+
     @Override
     public List<ArtifactResult> resolveArtifacts(
             RepositorySystemSession session,
@@ -657,42 +1082,365 @@ public class FossRepositorySystem
 //        throw new RuntimeException(
 //                "NYI: org.fedoraproject.maven.repository.internal." +
 //                "FossRepositorySystem.resolveArtifacts");
-        // Do this very straight forward instead of fast and complex
-        final List<ArtifactResult> results = new ArrayList<ArtifactResult>(requests.size());
-        for (ArtifactRequest request : requests) {
-            results.add(resolveArtifact(session, request));
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            final List<ArtifactResult> fossResults = Collections.synchronizedList(
+                    new ArrayList<ArtifactResult>());
+            final List<ArtifactResult> results;
+            if (resolveThreads > 1 && requests.size() > 1) {
+                results = resolveArtifactsInParallel(session, requests,
+                        fossResults);
+            } else {
+                // Do this very straight forward instead of fast and complex
+                results = new ArrayList<ArtifactResult>(requests.size());
+                for (ArtifactRequest request : requests) {
+                    results.add(resolveArtifact(session, request, fossResults));
+                }
+            }
+            verifyChecksums(fossResults);
+            found = true;
+            return results;
+        } finally {
+            record("resolveArtifacts", WHOLE_CALL, found, null, start);
         }
-        return results;
     }
 
+    private synchronized ExecutorService getResolveExecutor() {
+        if (resolveExecutor == null) {
+            resolveExecutor = Executors.newFixedThreadPool(resolveThreads,
+                    new DaemonThreadFactory("fre-resolve"));
+        }
+        return resolveExecutor;
+    }
+
+    /**
+     * Resolves all requests on the resolve worker pool. The results are in
+     * request order and, just like the sequential loop, the failure of the
+     * first failing request is thrown.
+     */
+    private List<ArtifactResult> resolveArtifactsInParallel(
+            final RepositorySystemSession session,
+            final Collection<? extends ArtifactRequest> requests,
+            final Collection<ArtifactResult> fossResults)
+            throws ArtifactResolutionException {
+
+        final ExecutorService executor = getResolveExecutor();
+        final List<Future<ArtifactResult>> futures =
+                new ArrayList<Future<ArtifactResult>>(requests.size());
+        for (final ArtifactRequest request : requests) {
+            futures.add(executor.submit(new Callable<ArtifactResult>() {
+                @Override
+                public ArtifactResult call()
+                        throws ArtifactResolutionException {
+                    return resolveArtifact(session, request, fossResults);
+                }
+            }));
+        }
+
+        final List<ArtifactResult> results =
+                new ArrayList<ArtifactResult>(requests.size());
+        try {
+            for (Future<ArtifactResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while resolving artifacts", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ArtifactResolutionException) {
+                throw (ArtifactResolutionException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            // nothing after the first failure is of any use
+            for (Future<ArtifactResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getChecksumExecutor() {
+        if (checksumExecutor == null) {
+            checksumExecutor = Executors.newFixedThreadPool(checksumThreads,
+                    new DaemonThreadFactory("fre-checksum"));
+        }
+        return checksumExecutor;
+    }
+
+    /**
+     * Verify the files of results from a <code>file:</code> FOSS repository
+     * against the checksum files in that repository, following the
+     * <code>fre.checksums</code> policy. Batches are verified on the checksum
+     * worker pool. Results the reactor, the workspace or the local
+     * repository produced have no checksums there and are skipped.
+     */
+    private void verifyChecksums(final List<ArtifactResult> candidates)
+            throws ArtifactResolutionException {
+
+        if (!checksumVerifier.isEnabled() || fossBasedir == null) {
+            return;
+        }
+        final List<ArtifactResult> results =
+                new ArrayList<ArtifactResult>(candidates.size());
+        for (ArtifactResult result : candidates) {
+            if (fossRepository.equals(result.getRepository())) {
+                results.add(result);
+            }
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final List<String> problems = new ArrayList<String>(results.size());
+        if (checksumThreads > 1 && results.size() > 1) {
+            final List<Future<String>> futures =
+                    new ArrayList<Future<String>>(results.size());
+            for (final ArtifactResult result : results) {
+                futures.add(getChecksumExecutor().submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return verifyChecksums(result.getArtifact());
+                    }
+                }));
+            }
+            try {
+                for (Future<String> future : futures) {
+                    problems.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "Interrupted while verifying checksums", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        } else {
+            for (ArtifactResult result : results) {
+                problems.add(verifyChecksums(result.getArtifact()));
+            }
+        }
+
+        record("verifyChecksums", WHOLE_CALL,
+                Collections.frequency(problems, null) == problems.size(), null,
+                start);
+
+        final List<ArtifactResult> failures = new ArrayList<ArtifactResult>();
+        for (int i = 0; i < results.size(); i++) {
+            final String problem = problems.get(i);
+            if (problem == null) {
+                continue;
+            }
+            if (checksumVerifier.getPolicy() != ChecksumVerifier.Policy.STRICT) {
+                logger.warn(problem);
+                continue;
+            }
+            final ArtifactResult result = results.get(i);
+            result.setArtifact(null);
+            result.addException(new ChecksumFailureException(problem));
+            failures.add(result);
+        }
+        if (!failures.isEmpty()) {
+            throw new ArtifactResolutionException(failures);
+        }
+    }
+
+    /**
+     * @return null if the file of the artifact matches its checksums in the
+     *         FOSS repository, otherwise a description of the problem
+     */
+    private String verifyChecksums(final Artifact artifact) {
+        final File file = artifact.getFile();
+        try {
+            return checksumVerifier.verify(file,
+                    new File(fossBasedir, RepositoryLayout.getPath(artifact)));
+        } catch (IOException e) {
+            return "Could not verify the checksums of " + file + ": " + e;
+        }
+    }
+
+    /**
+     * Metadata is only ever read from disk: the FOSS repository and the local
+     * repository are looked up directly, any other repository is reported
+     * as not having the metadata, nothing is transferred.
+     */
     @Override
     public List<MetadataResult> resolveMetadata(
             RepositorySystemSession session,
             Collection<? extends MetadataRequest> requests) {
 
-        // TODO: JPP does not support metadata, but the FOSS repo might
-        logger.warn("resolveMetadata " + requests);
-        //return delegate.resolveMetadata(session, requests);
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "FossRepositorySystem.resolveMetadata");
-//        final List<MetadataResult> results =
-//                new ArrayList<MetadataResult>(requests.size());
-//        for (MetadataRequest request : requests) {
-//            results.add(new MetadataResult(request));
-//        }
-//        return results;
+        debugf("resolveMetadata %s", requests);
+
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            final List<MetadataResult> results =
+                    new ArrayList<MetadataResult>(requests.size());
+            for (MetadataRequest request : requests) {
+                final RemoteRepository repository = request.getRepository();
+                final File file;
+                if (repository == null) {
+                    final LocalRepositoryManager localRepositoryManager =
+                            session.getLocalRepositoryManager();
+                    file = new File(
+                            localRepositoryManager.getRepository().getBasedir(),
+                            localRepositoryManager.getPathForLocalMetadata(
+                                    request.getMetadata()));
+                } else if (fossBasedir != null
+                        && fossRepository.equals(repository)) {
+                    file = new File(fossBasedir,
+                            RepositoryLayout.getPath(request.getMetadata()));
+                } else {
+                    file = null;
+                }
+                results.add(resolveMetadata(request, file));
+            }
+            found = true;
+            return results;
+        } finally {
+            record("resolveMetadata", WHOLE_CALL, found, null, start);
+        }
     }
 
+    /**
+     * @param file where the metadata would be, or null if it cannot be
+     *             looked up
+     */
+    private static MetadataResult resolveMetadata(
+            final MetadataRequest request, final File file) {
+
+        final Metadata metadata = request.getMetadata();
+        final MetadataResult result = new MetadataResult(request);
+        if (file != null && file.isFile()) {
+            result.setMetadata(metadata.setFile(file));
+        } else {
+            result.setException(new MetadataNotFoundException(metadata,
+                    request.getRepository()));
+        }
+        return result;
+    }
+
+    /**
+     * Install release artifacts straight into the local repository. Unlike
+     * maven this fires no repository events. Requests with snapshots, whose
+     * version-level metadata only maven maintains, or with artifacts
+     * without a file are left to maven as a whole.
+     */
     @Override
     public InstallResult install(
             RepositorySystemSession session,
             InstallRequest request)
             throws InstallationException {
 
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "FossRepositorySystem.install");
+        debugf("install %s", request);
+
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            if (!isReleaseWithFiles(request.getArtifacts())) {
+                final InstallResult result = delegate.install(session, request);
+                getSessionContext(session).evictMisses(request.getArtifacts());
+                found = true;
+                return result;
+            }
+
+            final LocalRepositoryManager localRepositoryManager =
+                    session.getLocalRepositoryManager();
+            final File basedir = localRepositoryManager.getRepository().getBasedir();
+
+            // groupId:artifactId -> versions metadata and the versions to add
+            final Map<String, Metadata> versionsMetadata =
+                    new LinkedHashMap<String, Metadata>();
+            final Map<String, Set<String>> versions =
+                    new HashMap<String, Set<String>>();
+            for (Artifact artifact : request.getArtifacts()) {
+                final String key = artifact.getGroupId() + ':'
+                        + artifact.getArtifactId();
+                if (!versionsMetadata.containsKey(key)) {
+                    versionsMetadata.put(key, new DefaultMetadata(
+                            artifact.getGroupId(), artifact.getArtifactId(),
+                            "maven-metadata.xml", Metadata.Nature.RELEASE_OR_SNAPSHOT));
+                    versions.put(key, new LinkedHashSet<String>());
+                }
+                versions.get(key).add(artifact.getBaseVersion());
+            }
+
+            final InstallResult result = new InstallResult(request);
+            final SyncContext syncContext = newSyncContext(session, false);
+            try {
+                syncContext.acquire(request.getArtifacts(),
+                        versionsMetadata.values());
+
+                for (Artifact artifact : request.getArtifacts()) {
+                    final File target = new File(basedir,
+                            localRepositoryManager.getPathForLocalArtifact(artifact));
+                    try {
+                        Checksums.write(target, ArtifactFiles.install(
+                                artifact.getFile(), target, installLinks,
+                                Checksums.REPOSITORY_ALGORITHMS));
+                    } catch (IOException e) {
+                        throw new InstallationException("Failed to install "
+                                + artifact + " to " + target, e);
+                    }
+                    localRepositoryManager.add(session,
+                            new LocalArtifactRegistration(artifact));
+                    result.addArtifact(artifact.setFile(target));
+                }
+
+                for (Map.Entry<String, Metadata> entry : versionsMetadata.entrySet()) {
+                    final Metadata metadata = entry.getValue();
+                    final File file = new File(basedir,
+                            localRepositoryManager.getPathForLocalMetadata(metadata));
+                    try {
+                        VersionsMetadata.addVersions(file, metadata.getGroupId(),
+                                metadata.getArtifactId(), versions.get(entry.getKey()));
+                    } catch (IOException e) {
+                        throw new InstallationException("Failed to update "
+                                + file, e);
+                    }
+                }
+            } finally {
+                syncContext.release();
+            }
+
+            // metadata of plugins and snapshots is left to maven
+            if (!request.getMetadata().isEmpty()) {
+                final InstallResult metadataResult = delegate.install(session,
+                        new InstallRequest()
+                                .setMetadata(request.getMetadata())
+                                .setTrace(request.getTrace()));
+                for (Metadata metadata : metadataResult.getMetadata()) {
+                    result.addMetadata(metadata);
+                }
+            }
+            // later modules of the reactor find what was just installed
+            getSessionContext(session).evictMisses(request.getArtifacts());
+            found = true;
+            return result;
+        } finally {
+            record("install", WHOLE_CALL, found, null, start);
+        }
+    }
+
+    private static boolean isReleaseWithFiles(
+            final Collection<? extends Artifact> artifacts) {
+
+        for (Artifact artifact : artifacts) {
+            if (artifact.getFile() == null || artifact.isSnapshot()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -701,9 +1449,65 @@ public class FossRepositorySystem
             DeployRequest request)
             throws DeploymentException {
 
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "FossRepositorySystem.deploy");
+        debugf("deploy %s", request);
+
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+            // snapshots need maven's timestamped versions and metadata
+            final File basedir = request.getRepository() != null
+                    && isReleaseWithFiles(request.getArtifacts())
+                    ? toBasedir(request.getRepository())
+                    : null;
+            if (basedir == null) {
+                final DeployResult result = delegate.deploy(session, request);
+                getSessionContext(session).evictMisses(request.getArtifacts());
+                found = true;
+                return result;
+            }
+
+            final List<Artifact> artifacts =
+                    new ArrayList<Artifact>(request.getArtifacts());
+            final DeployResult result = new DeployResult(request);
+            final SyncContext syncContext = newSyncContext(session, false);
+            try {
+                syncContext.acquire(artifacts, FileRepositoryDeployer
+                        .getVersionsMetadata(artifacts).values());
+
+                final FileRepositoryDeployer deployer =
+                        new FileRepositoryDeployer(basedir, getDeployExecutor());
+                for (Artifact artifact : deployer.deploy(artifacts)) {
+                    result.addArtifact(artifact);
+                }
+            } finally {
+                syncContext.release();
+            }
+
+            // metadata of plugins and snapshots is left to maven
+            if (!request.getMetadata().isEmpty()) {
+                final DeployResult metadataResult = delegate.deploy(session,
+                        new DeployRequest()
+                                .setRepository(request.getRepository())
+                                .setMetadata(request.getMetadata())
+                                .setTrace(request.getTrace()));
+                for (Metadata metadata : metadataResult.getMetadata()) {
+                    result.addMetadata(metadata);
+                }
+            }
+            getSessionContext(session).evictMisses(request.getArtifacts());
+            found = true;
+            return result;
+        } finally {
+            record("deploy", WHOLE_CALL, found, null, start);
+        }
+    }
+
+    private synchronized ExecutorService getDeployExecutor() {
+        if (deployExecutor == null) {
+            deployExecutor = Executors.newFixedThreadPool(deployThreads,
+                    new DaemonThreadFactory("fre-deploy"));
+        }
+        return deployExecutor;
     }
 
     @Override
@@ -718,18 +1522,32 @@ public class FossRepositorySystem
             RepositorySystemSession session,
             boolean shared) {
 
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "FossRepositorySystem.newSyncContext");
+        final LocalRepository localRepository = session.getLocalRepository();
+        final File lockDirectory =
+                localRepository != null && localRepository.getBasedir() != null
+                        ? new File(localRepository.getBasedir(), ".locks")
+                        : null;
+        return new FossSyncContext(syncLocks, lockDirectory, shared, logger);
     }
 
+    /**
+     * @return the offline session on the JPP repository derived from the
+     *         current session, which is created once per session
+     */
     private RepositorySystemSession openJpp(
+            final SessionContext context,
             final RepositorySystemSession current) {
 
         assert useJpp : "useJpp is not set";
-        return new DefaultRepositorySystemSession(current)
-                .setOffline(true)
-//                .setWorkspaceReader(jppRepository);
-                .setLocalRepositoryManager(jppRepositoryManager);
+        RepositorySystemSession jppSession = context.getJppSession();
+        if (jppSession == null) {
+            // racing threads create equal sessions, either one will do
+            jppSession = new DefaultRepositorySystemSession(current)
+                    .setOffline(true)
+//                    .setWorkspaceReader(jppRepository);
+                    .setLocalRepositoryManager(jppRepositoryManager);
+            context.setJppSession(jppSession);
+        }
+        return jppSession;
     }
 }
\ No newline at end of file
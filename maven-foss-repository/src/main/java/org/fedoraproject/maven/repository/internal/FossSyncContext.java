@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.sonatype.aether.SyncContext;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.metadata.Metadata;
+import org.sonatype.aether.spi.log.Logger;
+
+/**
+ * Guards artifacts and metadata of the local repository with a lock per
+ * groupId:artifactId:version, see {@link SyncLocks}. Locks are taken in
+ * stripe order so contexts cannot deadlock each other.
+ * <p/>
+ * A read lock cannot be upgraded, so a thread that holds a stripe shared,
+ * through another context, cannot take it exclusively; such an acquire
+ * fails instead of waiting for itself forever.
+ * <p/>
+ * Like any SyncContext, an instance is meant to be used by a single thread.
+ */
+class FossSyncContext implements SyncContext {
+    private final SyncLocks locks;
+
+    // where the file locks live, or null to only lock this process
+    private final File lockDirectory;
+
+    private final boolean shared;
+
+    private final Logger logger;
+
+    private final List<Lock> heldLocks = new ArrayList<Lock>();
+
+    private final List<SyncLocks.FileLockHolder> heldFileLocks =
+            new ArrayList<SyncLocks.FileLockHolder>();
+
+    FossSyncContext(
+            final SyncLocks locks,
+            final File lockDirectory,
+            final boolean shared,
+            final Logger logger) {
+
+        this.locks = locks;
+        this.lockDirectory = locks.isUsingFileLocks() ? lockDirectory : null;
+        this.shared = shared;
+        this.logger = logger;
+    }
+
+    public void acquire(
+            final Collection<? extends Artifact> artifacts,
+            final Collection<? extends Metadata> metadatas) {
+
+        // by stripe, then key, which is the order to lock in
+        final Map<Integer, Set<String>> keys =
+                new TreeMap<Integer, Set<String>>();
+        if (artifacts != null) {
+            for (Artifact artifact : artifacts) {
+                addKey(keys, artifact.getGroupId() + '~'
+                        + artifact.getArtifactId() + '~'
+                        + artifact.getBaseVersion());
+            }
+        }
+        if (metadatas != null) {
+            for (Metadata metadata : metadatas) {
+                addKey(keys, metadata.getGroupId() + '~'
+                        + metadata.getArtifactId() + '~'
+                        + metadata.getVersion());
+            }
+        }
+
+        if (!shared) {
+            // check before locking anything, so a failure holds nothing
+            for (Integer index : keys.keySet()) {
+                final ReentrantReadWriteLock stripe = locks.getStripe(index);
+                if (stripe.getReadHoldCount() > 0
+                        && !stripe.isWriteLockedByCurrentThread()) {
+                    throw new IllegalStateException("Cannot lock "
+                            + keys.get(index) + " exclusively, this thread"
+                            + " already holds them shared");
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Set<String>> stripe : keys.entrySet()) {
+            final Lock lock = shared
+                    ? locks.getStripe(stripe.getKey()).readLock()
+                    : locks.getStripe(stripe.getKey()).writeLock();
+            lock.lock();
+            heldLocks.add(lock);
+
+            if (lockDirectory == null) {
+                continue;
+            }
+            for (String key : stripe.getValue()) {
+                try {
+                    heldFileLocks.add(
+                            locks.lockFile(lockDirectory, key, shared));
+                } catch (IOException e) {
+                    // a read-only local repository, this process is covered
+                    logger.debug("Could not lock " + key + " in "
+                            + lockDirectory, e);
+                }
+            }
+        }
+    }
+
+    private void addKey(
+            final Map<Integer, Set<String>> keys,
+            final String key) {
+
+        final Integer index = locks.getStripeIndex(key);
+        Set<String> stripeKeys = keys.get(index);
+        if (stripeKeys == null) {
+            stripeKeys = new TreeSet<String>();
+            keys.put(index, stripeKeys);
+        }
+        stripeKeys.add(key);
+    }
+
+    public void release() {
+        for (int i = heldFileLocks.size() - 1; i >= 0; i--) {
+            try {
+                heldFileLocks.get(i).release();
+            } catch (IOException e) {
+                logger.debug("Could not release file lock", e);
+            }
+        }
+        heldFileLocks.clear();
+
+        for (int i = heldLocks.size() - 1; i >= 0; i--) {
+            heldLocks.get(i).unlock();
+        }
+        heldLocks.clear();
+    }
+}
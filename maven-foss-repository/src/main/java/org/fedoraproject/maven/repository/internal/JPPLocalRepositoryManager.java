@@ -23,8 +23,26 @@
 package org.fedoraproject.maven.repository.internal;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.codehaus.plexus.util.FileUtils;
 import org.fedoraproject.maven.repository.jpp.JavadirWorkspaceReader;
+import org.fedoraproject.maven.repository.jpp.MavenJPackageDepmap;
 import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.artifact.Artifact;
 import org.sonatype.aether.metadata.Metadata;
@@ -38,17 +56,64 @@ import org.sonatype.aether.repository.LocalRepository;
 import org.sonatype.aether.repository.LocalRepositoryManager;
 import org.sonatype.aether.repository.RemoteRepository;
 import org.sonatype.aether.repository.WorkspaceReader;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
 
 /**
  * @author <a href="mailto:cdewolf@redhat.com">Carlo de Wolf</a>
  */
 class JPPLocalRepositoryManager implements LocalRepositoryManager {
+    private static final String METADATA_FILE = "maven-metadata.xml";
+
+    // marks a groupId and artifactId JPP does not know about
+    private static final File NO_METADATA = new File("");
+
     private final LocalRepository repository;
 
-    private WorkspaceReader jppRepository = new JavadirWorkspaceReader();
+    private final WorkspaceReader jppRepository;
+
+    // null for the shared depmap, which is only loaded once JPP is used
+    private final MavenJPackageDepmap depmap;
+
+    private final AtomicReference<MetadataFiles> metadataFiles =
+            new AtomicReference<MetadataFiles>(new MetadataFiles(-1));
+
+    private File metadataDirectory;
+
+    /**
+     * The metadata synthesized from one generation of the depmap.
+     */
+    private static class MetadataFiles {
+        final long generation;
+
+        // groupId:artifactId -> synthesized metadata file, each written
+        // by a single thread while the others wait for it
+        final ConcurrentMap<String, FutureTask<File>> files =
+                new ConcurrentHashMap<String, FutureTask<File>>();
+
+        MetadataFiles(final long generation) {
+            this.generation = generation;
+        }
+    }
 
     JPPLocalRepositoryManager() {
-        repository = new LocalRepository("/usr/share/java");
+        this(new JavadirWorkspaceReader());
+    }
+
+    JPPLocalRepositoryManager(final WorkspaceReader jppRepository) {
+        this(jppRepository, null);
+    }
+
+    JPPLocalRepositoryManager(
+            final WorkspaceReader jppRepository,
+            final MavenJPackageDepmap depmap) {
+
+        this.repository = new LocalRepository("/usr/share/java");
+        this.jppRepository = jppRepository;
+        this.depmap = depmap;
+    }
+
+    private MavenJPackageDepmap getDepmap() {
+        return depmap != null ? depmap : MavenJPackageDepmap.getInstance();
     }
 
     @Override
@@ -76,9 +141,7 @@ class JPPLocalRepositoryManager implements LocalRepositoryManager {
 
     @Override
     public String getPathForLocalMetadata(Metadata metadata) {
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "JPPLocalRepositoryManager.getPathForLocalMetadata");
+        return RepositoryLayout.getPath(metadata, "local");
     }
 
     @Override
@@ -87,9 +150,7 @@ class JPPLocalRepositoryManager implements LocalRepositoryManager {
             RemoteRepository repository,
             String context) {
 
-        throw new RuntimeException(
-                "NYI: org.fedoraproject.maven.repository.internal." +
-                "JPPLocalRepositoryManager.getPathForRemoteMetadata");
+        return RepositoryLayout.getPath(metadata, repository.getId());
     }
 
     @Override
@@ -121,12 +182,142 @@ class JPPLocalRepositoryManager implements LocalRepositoryManager {
             RepositorySystemSession session,
             LocalMetadataRequest request) {
 
-//        System.err.println("JPPLocalRepositoryManager: find(" + session + ", " +
-//                request + ")");
         final LocalMetadataResult result = new LocalMetadataResult(request);
-        // TODO: for the moment we don't support metadata
+        final Metadata metadata = request.getMetadata();
+        // JPP only knows about artifacts, so there are no plugin prefixes
+        // or snapshots to describe
+        if (metadata.getArtifactId().length() == 0
+                || metadata.getVersion().length() > 0
+                || !METADATA_FILE.equals(metadata.getType())) {
+            return result;
+        }
+
+        // forget what was synthesized from a depmap that has been reloaded
+        final long generation = getDepmap().getGeneration();
+        MetadataFiles current = metadataFiles.get();
+        if (current.generation != generation) {
+            final MetadataFiles fresh = new MetadataFiles(generation);
+            current = metadataFiles.compareAndSet(current, fresh)
+                    ? fresh : metadataFiles.get();
+        }
+
+        final String key = metadata.getGroupId() + ':' + metadata.getArtifactId();
+        FutureTask<File> task = current.files.get(key);
+        if (task == null) {
+            final long taskGeneration = current.generation;
+            final FutureTask<File> newTask = new FutureTask<File>(
+                    new Callable<File>() {
+                        public File call() {
+                            return synthesizeMetadata(metadata, taskGeneration);
+                        }
+                    });
+            task = current.files.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        final File file;
+        try {
+            file = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        if (file != NO_METADATA) {
+            result.setFile(file);
+        }
         return result;
-//        throw new RuntimeException("find");
+    }
+
+    /**
+     * Write the metadata JPP implies for a groupId and artifactId: the
+     * versions the depmap lists or, when it lists none, the versions the
+     * javadir reader claims. Every version of an artifact resolves to the
+     * same JPP file. Each generation of the depmap writes to a directory of
+     * its own, so files handed out earlier are never rewritten.
+     */
+    private File synthesizeMetadata(
+            final Metadata request,
+            final long generation) {
+
+        final String groupId = request.getGroupId();
+        final String artifactId = request.getArtifactId();
+        final Artifact pom = new DefaultArtifact(groupId, artifactId, "pom", "");
+        if (jppRepository.findArtifact(pom) == null
+                && jppRepository.findArtifact(new DefaultArtifact(groupId,
+                        artifactId, "jar", "")) == null) {
+            return NO_METADATA;
+        }
+
+        final List<String> versions = new ArrayList<String>(
+                getDepmap().getVersions(groupId, artifactId));
+        if (versions.isEmpty()) {
+            versions.addAll(jppRepository.findVersions(pom));
+        }
+        Collections.sort(versions, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return new ComparableVersion(a).compareTo(
+                        new ComparableVersion(b));
+            }
+        });
+
+        final Versioning versioning = new Versioning();
+        versioning.setVersions(versions);
+        if (!versions.isEmpty()) {
+            versioning.setLatest(versions.get(versions.size() - 1));
+            versioning.setRelease(versioning.getLatest());
+        }
+        versioning.updateTimestamp();
+
+        final org.apache.maven.artifact.repository.metadata.Metadata metadata =
+                new org.apache.maven.artifact.repository.metadata.Metadata();
+        metadata.setGroupId(groupId);
+        metadata.setArtifactId(artifactId);
+        metadata.setVersioning(versioning);
+
+        try {
+            final File file = new File(new File(getMetadataDirectory(),
+                    Long.toString(generation)), RepositoryLayout.getPath(request));
+            file.getParentFile().mkdirs();
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                new MetadataXpp3Writer().write(out, metadata);
+            } finally {
+                out.close();
+            }
+            return file;
+        } catch (IOException e) {
+            MavenJPackageDepmap.debug("Could not write metadata of " + groupId
+                    + ":" + artifactId + ": " + e);
+            return NO_METADATA;
+        }
+    }
+
+    private synchronized File getMetadataDirectory() throws IOException {
+        if (metadataDirectory == null) {
+            final File directory = File.createTempFile("fre-jpp-metadata", "");
+            if (!directory.delete() || !directory.mkdir()) {
+                throw new IOException("Could not create " + directory);
+            }
+            // deleteOnExit only removes empty directories, so the whole
+            // tree goes at shutdown
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread("fre-jpp-metadata-cleanup") {
+                @Override
+                public void run() {
+                    try {
+                        FileUtils.deleteDirectory(directory);
+                    } catch (IOException e) {
+                        // nothing left to report it to
+                    }
+                }
+            });
+            metadataDirectory = directory;
+        }
+        return metadataDirectory;
     }
 
     @Override
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sonatype.aether.artifact.Artifact;
+
+/**
+ * Remembers for which coordinates a stage of the fallback chain did not
+ * produce a result, so a repeated lookup can skip straight to the stage that
+ * answered last time.
+ *
+ * @param <E> the type of exception thrown by a failing stage
+ */
+class NegativeLookupCache<E extends Exception> {
+    // ConcurrentHashMap does not allow null values
+    private static final Object NO_CAUSE = new Object();
+
+    private final Map<ResolutionStage, ConcurrentMap<String, Object>> misses =
+            new EnumMap<ResolutionStage, ConcurrentMap<String, Object>>(
+                    ResolutionStage.class);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+
+    NegativeLookupCache() {
+        for (ResolutionStage stage : ResolutionStage.values()) {
+            misses.put(stage, new ConcurrentHashMap<String, Object>());
+        }
+    }
+
+    static String key(final Artifact artifact) {
+        return artifact.getGroupId() + ':' + artifact.getArtifactId() + ':'
+                + artifact.getClassifier() + ':' + artifact.getExtension()
+                + ':' + artifact.getVersion();
+    }
+
+    /**
+     * Records that the given stage did not produce a result.
+     *
+     * @param cause the exception thrown by the stage, may be {@code null}
+     */
+    void add(final ResolutionStage stage, final String key, final E cause) {
+        misses.get(stage).put(key, cause != null ? cause : NO_CAUSE);
+    }
+
+    /**
+     * @return {@code true} if the given stage is known to fail for key
+     */
+    boolean contains(final ResolutionStage stage, final String key) {
+        lookups.incrementAndGet();
+        if (misses.get(stage).containsKey(key)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the exception thrown when the stage failed, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    E getCause(final ResolutionStage stage, final String key) {
+        final Object cause = misses.get(stage).get(key);
+        return cause == NO_CAUSE ? null : (E) cause;
+    }
+
+    /**
+     * Forgets the misses of every version, classifier and extension of the
+     * given artifact, for instance because it was just installed.
+     */
+    void removeAll(final String groupId, final String artifactId) {
+        final String prefix = groupId + ':' + artifactId + ':';
+        for (ConcurrentMap<String, Object> stageMisses : misses.values()) {
+            for (Iterator<String> it = stageMisses.keySet().iterator();
+                    it.hasNext();) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    void clear() {
+        for (ConcurrentMap<String, Object> stageMisses : misses.values()) {
+            stageMisses.clear();
+        }
+    }
+
+    /**
+     * @return the number of lookups that skipped a stage
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to try a stage
+     */
+    long getMisses() {
+        return lookups.get() - hits.get();
+    }
+
+    int size() {
+        int size = 0;
+        for (ConcurrentMap<String, Object> stageMisses : misses.values()) {
+            size += stageMisses.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "NegativeLookupCache[entries=" + size() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + "]";
+    }
+}
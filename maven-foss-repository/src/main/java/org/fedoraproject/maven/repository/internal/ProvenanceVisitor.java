@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.sonatype.aether.graph.DependencyNode;
+import org.sonatype.aether.graph.DependencyVisitor;
+
+/**
+ * Records on every node of a collected graph which stage produced its
+ * descriptor, see {@link FossRepositorySystem#PROVENANCE_KEY}.
+ */
+class ProvenanceVisitor implements DependencyVisitor {
+    private final SessionContext context;
+
+    ProvenanceVisitor(final SessionContext context) {
+        this.context = context;
+    }
+
+    public boolean visitEnter(final DependencyNode node) {
+        if (node.getDependency() != null) {
+            final ResolutionStage stage = context.getProvenance().get(
+                    NegativeLookupCache.key(node.getDependency().getArtifact()));
+            if (stage != null) {
+                node.setData(FossRepositorySystem.PROVENANCE_KEY, stage.name());
+            }
+        }
+        return true;
+    }
+
+    public boolean visitLeave(final DependencyNode node) {
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.metadata.Metadata;
+
+/**
+ * Paths of artifacts and metadata in a repository with the default layout.
+ */
+final class RepositoryLayout {
+    private RepositoryLayout() {
+    }
+
+    static String getPath(final Artifact artifact) {
+        final StringBuilder path = new StringBuilder(128)
+                .append(artifact.getGroupId().replace('.', '/')).append('/')
+                .append(artifact.getArtifactId()).append('/')
+                .append(artifact.getBaseVersion()).append('/')
+                .append(artifact.getArtifactId()).append('-')
+                .append(artifact.getVersion());
+        if (artifact.getClassifier().length() > 0) {
+            path.append('-').append(artifact.getClassifier());
+        }
+        return path.append('.').append(artifact.getExtension()).toString();
+    }
+
+    static String getPath(final Metadata metadata) {
+        final StringBuilder path = new StringBuilder(128);
+        if (metadata.getGroupId().length() > 0) {
+            path.append(metadata.getGroupId().replace('.', '/')).append('/');
+            if (metadata.getArtifactId().length() > 0) {
+                path.append(metadata.getArtifactId()).append('/');
+                if (metadata.getVersion().length() > 0) {
+                    path.append(metadata.getVersion()).append('/');
+                }
+            }
+        }
+        return path.append(metadata.getType()).toString();
+    }
+
+    /**
+     * Returns the path of metadata as a local repository keeps it, with the
+     * key of the repository it came from in the file name, for example
+     * maven-metadata-local.xml.
+     */
+    static String getPath(final Metadata metadata, final String repositoryKey) {
+        final String path = getPath(metadata);
+        final int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf('/')) {
+            return path + '-' + repositoryKey;
+        }
+        return path.substring(0, dot) + '-' + repositoryKey + path.substring(dot);
+    }
+}
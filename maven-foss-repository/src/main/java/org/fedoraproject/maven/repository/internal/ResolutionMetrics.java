@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times the calls to the entry points of
+ * {@link FossRepositorySystem}, broken down by the stage that handled them
+ * and their outcome. Latencies are kept in a histogram with a bucket per
+ * power of two microseconds, so percentiles are known to within a factor of
+ * two.
+ * <p/>
+ * Nothing is recorded unless <code>fre.metrics</code> is set, so the MXBean
+ * of a build without it shows no calls.
+ */
+class ResolutionMetrics implements ResolutionMetricsMXBean {
+    static final String OBJECT_NAME =
+            "org.fedoraproject.maven:type=ResolutionMetrics";
+
+    static final boolean ENABLED = System.getProperty("fre.metrics") != null;
+
+    /**
+     * The stage of a measurement of the entry point as a whole.
+     */
+    static final String WHOLE_CALL = "*";
+
+    enum Outcome {
+        /** the stage produced a result */
+        FOUND,
+        /** the stage failed */
+        MISSED,
+        /** a result remembered from an earlier call */
+        CACHED,
+        /** a failure remembered from an earlier call, the stage was skipped */
+        CACHED_MISS
+    }
+
+    private static final int BUCKETS = 32;
+
+    private static class InstanceHolder {
+        private static final ResolutionMetrics INSTANCE = newDefaultInstance();
+    }
+
+    /**
+     * A counter with a latency histogram.
+     */
+    static class Timer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(final long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            buckets.incrementAndGet(bucket(nanos));
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @return the upper bound in nanoseconds of the bucket holding the
+         *         given percentile of the calls
+         */
+        long getPercentileNanos(final int percentile) {
+            final long threshold = (count.get() * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= threshold && seen > 0) {
+                    return TimeUnit.MICROSECONDS.toNanos(1L << i);
+                }
+            }
+            return maxNanos.get();
+        }
+
+        private static int bucket(final long nanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            // bucket i holds the calls that took less than 2^i microseconds
+            final int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            return Math.min(bucket, BUCKETS - 1);
+        }
+    }
+
+    private final boolean enabled;
+
+    // entry point -> stage -> a timer per outcome, so recording a call
+    // builds no key
+    private final ConcurrentMap<String, ConcurrentMap<Object,
+            Map<Outcome, Timer>>> timers = new ConcurrentHashMap<String,
+            ConcurrentMap<Object, Map<Outcome, Timer>>>();
+
+    /**
+     * @param enabled whether to record anything at all
+     */
+    ResolutionMetrics(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    static ResolutionMetrics getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static ResolutionMetrics newDefaultInstance() {
+        final ResolutionMetrics metrics = new ResolutionMetrics(ENABLED);
+        try {
+            final MBeanServer server =
+                    ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            // another class loader may have loaded FRE before
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            // the metrics are still printed at the end of the build
+        } catch (SecurityException e) {
+            // ditto
+        }
+        return metrics;
+    }
+
+    private static String key(final String entryPoint, final Object stage,
+            final Outcome outcome) {
+        return entryPoint + '/' + stage + '/' + outcome;
+    }
+
+    /**
+     * Record a call which took the given number of nanoseconds.
+     *
+     * @param stage the stage, or {@link #WHOLE_CALL}
+     */
+    void record(final String entryPoint, final Object stage,
+            final Outcome outcome, final long nanos) {
+
+        if (!enabled) {
+            return;
+        }
+        getTimers(entryPoint, stage).get(outcome).record(nanos);
+    }
+
+    private Map<Outcome, Timer> getTimers(final String entryPoint,
+            final Object stage) {
+
+        ConcurrentMap<Object, Map<Outcome, Timer>> stages =
+                timers.get(entryPoint);
+        if (stages == null) {
+            final ConcurrentMap<Object, Map<Outcome, Timer>> newStages =
+                    new ConcurrentHashMap<Object, Map<Outcome, Timer>>();
+            stages = timers.putIfAbsent(entryPoint, newStages);
+            if (stages == null) {
+                stages = newStages;
+            }
+        }
+        Map<Outcome, Timer> outcomes = stages.get(stage);
+        if (outcomes == null) {
+            // filled up front, so it is only read once published
+            final Map<Outcome, Timer> newOutcomes =
+                    new EnumMap<Outcome, Timer>(Outcome.class);
+            for (Outcome outcome : Outcome.values()) {
+                newOutcomes.put(outcome, new Timer());
+            }
+            outcomes = stages.putIfAbsent(stage, newOutcomes);
+            if (outcomes == null) {
+                outcomes = newOutcomes;
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * @return the number of calls recorded under the key
+     */
+    long getCount(final String entryPoint, final Object stage,
+            final Outcome outcome) {
+
+        final Map<Object, Map<Outcome, Timer>> stages = timers.get(entryPoint);
+        final Map<Outcome, Timer> outcomes =
+                stages != null ? stages.get(stage) : null;
+        return outcomes != null ? outcomes.get(outcome).getCount() : 0;
+    }
+
+    boolean isEmpty() {
+        return getTimers().isEmpty();
+    }
+
+    /**
+     * @return the timers that recorded calls, by key
+     */
+    private Map<String, Timer> getTimers() {
+        final Map<String, Timer> sorted = new TreeMap<String, Timer>();
+        for (Map.Entry<String, ConcurrentMap<Object, Map<Outcome, Timer>>>
+                stages : timers.entrySet()) {
+            for (Map.Entry<Object, Map<Outcome, Timer>> outcomes
+                    : stages.getValue().entrySet()) {
+                for (Map.Entry<Outcome, Timer> timer
+                        : outcomes.getValue().entrySet()) {
+                    if (timer.getValue().getCount() > 0) {
+                        sorted.put(key(stages.getKey(), outcomes.getKey(),
+                                timer.getKey()), timer.getValue());
+                    }
+                }
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timer> entry : getTimers().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getTotalMillis() {
+        final Map<String, Long> millis = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timer> entry : getTimers().entrySet()) {
+            millis.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(
+                    entry.getValue().getTotalNanos()));
+        }
+        return millis;
+    }
+
+    /**
+     * @return a line per key with the number of calls, the total time, its
+     *         share of the time spent in the entry point and the latencies
+     */
+    @Override
+    public String getSummary() {
+        final Map<String, Timer> sorted = getTimers();
+        final Map<String, Long> entryPointNanos = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timer> entry : sorted.entrySet()) {
+            final String[] key = entry.getKey().split("/");
+            if (WHOLE_CALL.equals(key[1])) {
+                final Long nanos = entryPointNanos.get(key[0]);
+                entryPointNanos.put(key[0], entry.getValue().getTotalNanos()
+                        + (nanos != null ? nanos : 0));
+            }
+        }
+
+        final Formatter formatter = new Formatter();
+        formatter.format("%-24s %-6s %-11s %8s %10s %5s %9s %9s %9s%n",
+                "entry point", "stage", "outcome", "calls", "total ms", "%",
+                "p50 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, Timer> entry : sorted.entrySet()) {
+            final String[] key = entry.getKey().split("/");
+            final Timer timer = entry.getValue();
+            final Long entryNanos = entryPointNanos.get(key[0]);
+            final double share = entryNanos != null && entryNanos > 0
+                    ? 100.0 * timer.getTotalNanos() / entryNanos
+                    : 100.0;
+            formatter.format("%-24s %-6s %-11s %8d %10.1f %5.1f %9.3f %9.3f %9.3f%n",
+                    key[0], key[1], key[2], timer.getCount(),
+                    millis(timer.getTotalNanos()), share,
+                    millis(timer.getPercentileNanos(50)),
+                    millis(timer.getPercentileNanos(99)),
+                    millis(timer.getMaxNanos()));
+        }
+        return formatter.toString();
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    @Override
+    public void reset() {
+        timers.clear();
+    }
+}
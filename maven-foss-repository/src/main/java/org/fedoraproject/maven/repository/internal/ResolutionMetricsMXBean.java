@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link ResolutionMetrics}, registered as
+ * {@value ResolutionMetrics#OBJECT_NAME}. Keys are of the form
+ * <code>entryPoint/stage/outcome</code>, where the stage is <code>*</code>
+ * for the entry point as a whole.
+ */
+public interface ResolutionMetricsMXBean {
+    /**
+     * @return the number of calls by key
+     */
+    Map<String, Long> getCounts();
+
+    /**
+     * @return the total time spent in milliseconds by key
+     */
+    Map<String, Long> getTotalMillis();
+
+    /**
+     * @return the table also printed at the end of the build
+     */
+    String getSummary();
+
+    void reset();
+}
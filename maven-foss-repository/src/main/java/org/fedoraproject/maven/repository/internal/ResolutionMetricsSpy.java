@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.apache.maven.eventspy.AbstractEventSpy;
+import org.apache.maven.eventspy.EventSpy;
+import org.apache.maven.execution.ExecutionEvent;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Prints the {@link ResolutionMetrics} when the build ends, if
+ * <code>fre.metrics</code> is set.
+ */
+@Component(role = EventSpy.class, hint = "fre-metrics")
+public class ResolutionMetricsSpy extends AbstractEventSpy {
+    @Requirement
+    private Logger logger;
+
+    @Override
+    public void onEvent(Object event) {
+        if (!ResolutionMetrics.ENABLED || !(event instanceof ExecutionEvent)
+                || ((ExecutionEvent) event).getType()
+                        != ExecutionEvent.Type.SessionEnded) {
+            return;
+        }
+
+        final ResolutionMetrics metrics = ResolutionMetrics.getInstance();
+        if (metrics.isEmpty()) {
+            return;
+        }
+        logger.info("FRE resolution metrics:");
+        for (String line : metrics.getSummary().split("\\r?\\n")) {
+            logger.info(line);
+        }
+    }
+}
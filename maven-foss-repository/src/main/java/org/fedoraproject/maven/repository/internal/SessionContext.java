@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.graph.Dependency;
+import org.sonatype.aether.resolution.ArtifactDescriptorException;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
+
+/**
+ * State that {@link FossRepositorySystem} keeps for the lifetime of a
+ * repository system session.
+ */
+class SessionContext {
+    private final NegativeLookupCache<ArtifactResolutionException> artifactMisses;
+    private final NegativeLookupCache<ArtifactDescriptorException> descriptorMisses;
+    private final DescriptorCache descriptors;
+    private final VersionRangeCache versionRanges;
+    // without caching every lookup gets empty caches of its own
+    private final boolean caching;
+    private final ConcurrentMap<String, FutureTask<?>> prefetches =
+            new ConcurrentHashMap<String, FutureTask<?>>();
+    private final Set<String> managed = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger collections = new AtomicInteger();
+    private final ConcurrentMap<String, ResolutionStage> provenance =
+            new ConcurrentHashMap<String, ResolutionStage>();
+    // describe the session rather than lookups, so kept even without caching
+    private volatile boolean validated;
+    private volatile RepositorySystemSession jppSession;
+
+    SessionContext(final int maxDescriptors) {
+        this(new NegativeLookupCache<ArtifactResolutionException>(),
+                new NegativeLookupCache<ArtifactDescriptorException>(),
+                new DescriptorCache(maxDescriptors),
+                new VersionRangeCache(), true);
+    }
+
+    /**
+     * Create a context which keeps the state of the session, such as
+     * running collections, but remembers no lookups, used when the cache
+     * scope is none.
+     */
+    static SessionContext withoutCaches() {
+        return new SessionContext(
+                new NegativeLookupCache<ArtifactResolutionException>(),
+                new NegativeLookupCache<ArtifactDescriptorException>(),
+                new DescriptorCache(0), new VersionRangeCache(), false);
+    }
+
+    /**
+     * Create a context which shares its caches with another one, used when
+     * caches are scoped to the build instead of the session.
+     */
+    SessionContext(final SessionContext shared) {
+        this(shared.artifactMisses, shared.descriptorMisses,
+                shared.descriptors, shared.versionRanges, shared.caching);
+    }
+
+    private SessionContext(
+            final NegativeLookupCache<ArtifactResolutionException> artifactMisses,
+            final NegativeLookupCache<ArtifactDescriptorException> descriptorMisses,
+            final DescriptorCache descriptors,
+            final VersionRangeCache versionRanges,
+            final boolean caching) {
+
+        this.artifactMisses = artifactMisses;
+        this.descriptorMisses = descriptorMisses;
+        this.descriptors = descriptors;
+        this.versionRanges = versionRanges;
+        this.caching = caching;
+    }
+
+    NegativeLookupCache<ArtifactResolutionException> getArtifactMisses() {
+        return caching
+                ? artifactMisses
+                : new NegativeLookupCache<ArtifactResolutionException>();
+    }
+
+    NegativeLookupCache<ArtifactDescriptorException> getDescriptorMisses() {
+        return caching
+                ? descriptorMisses
+                : new NegativeLookupCache<ArtifactDescriptorException>();
+    }
+
+    /**
+     * @return whether lookups are remembered beyond a single call
+     */
+    boolean isCaching() {
+        return caching;
+    }
+
+    DescriptorCache getDescriptors() {
+        return caching ? descriptors : new DescriptorCache(0);
+    }
+
+    VersionRangeCache getVersionRanges() {
+        return caching ? versionRanges : new VersionRangeCache();
+    }
+
+    /**
+     * Forget that the stages failed for the given artifacts, which now exist
+     * in the local or a deployment repository.
+     */
+    void evictMisses(final Collection<? extends Artifact> artifacts) {
+        for (Artifact artifact : artifacts) {
+            artifactMisses.removeAll(artifact.getGroupId(),
+                    artifact.getArtifactId());
+            descriptorMisses.removeAll(artifact.getGroupId(),
+                    artifact.getArtifactId());
+        }
+    }
+
+    /**
+     * @return the descriptor prefetches by artifact key, see
+     *         {@link NegativeLookupCache#key(org.sonatype.aether.artifact.Artifact)}
+     */
+    ConcurrentMap<String, FutureTask<?>> getPrefetches() {
+        return prefetches;
+    }
+
+    /**
+     * Remember that the collector may manage the versions of the given
+     * dependencies, so prefetching their declared versions could be wasted.
+     */
+    void addManaged(final Collection<Dependency> dependencies) {
+        for (Dependency dependency : dependencies) {
+            managed.add(managementKey(dependency.getArtifact()));
+        }
+    }
+
+    /**
+     * @return whether dependency management seen in the running collections
+     *         applies to the given artifact
+     */
+    boolean isManaged(final Artifact artifact) {
+        return managed.contains(managementKey(artifact));
+    }
+
+    // the key under which the dependency manager of the collector matches
+    private static String managementKey(final Artifact artifact) {
+        return artifact.getGroupId() + ':' + artifact.getArtifactId() + ':'
+                + artifact.getExtension() + ':' + artifact.getClassifier();
+    }
+
+    void beginCollection() {
+        collections.incrementAndGet();
+    }
+
+    /**
+     * Ends a collection. After the last running collection the prefetches
+     * are forgotten, so the next collection prefetches again.
+     */
+    void endCollection() {
+        if (collections.decrementAndGet() == 0) {
+            prefetches.clear();
+            managed.clear();
+        }
+    }
+
+    /**
+     * @return whether a dependency collection is running in this session
+     */
+    boolean isCollecting() {
+        return collections.get() > 0;
+    }
+
+    /**
+     * @return the stage which produced the descriptor of each artifact read
+     *         in this session, by artifact key
+     */
+    ConcurrentMap<String, ResolutionStage> getProvenance() {
+        return provenance;
+    }
+
+    /**
+     * @return whether the session passed validation
+     */
+    boolean isValidated() {
+        return validated;
+    }
+
+    void setValidated() {
+        validated = true;
+    }
+
+    /**
+     * @return the offline session on the JPP repository derived from this
+     *         session, or null if it has not been needed yet
+     */
+    RepositorySystemSession getJppSession() {
+        return jppSession;
+    }
+
+    void setJppSession(final RepositorySystemSession jppSession) {
+        this.jppSession = jppSession;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The locks behind {@link FossSyncContext}. Threads of this process lock one
+ * of a fixed number of read-write locks picked by the hash of the key, other
+ * processes are kept out by a file lock per key in a directory of the local
+ * repository. File locks belong to the whole JVM, so they are kept in a
+ * registry shared by all instances.
+ */
+class SyncLocks {
+    // file -> holder, while any context uses the file
+    private static final Map<File, FileLockHolder> fileLocks =
+            new HashMap<File, FileLockHolder>();
+
+    /**
+     * A file lock held on behalf of one or more contexts of this process.
+     * The JVM allows a single lock per file, so it is shared and counted.
+     */
+    static class FileLockHolder {
+        private final File file;
+        // contexts using the holder, guarded by fileLocks
+        private int references;
+        private int count;
+        private RandomAccessFile raf;
+        private FileLock lock;
+
+        private FileLockHolder(final File file) {
+            this.file = file;
+        }
+
+        private synchronized void acquire(final boolean shared)
+                throws IOException {
+
+            if (count == 0) {
+                file.getParentFile().mkdirs();
+                raf = new RandomAccessFile(file, "rw");
+                try {
+                    final FileChannel channel = raf.getChannel();
+                    lock = channel.lock(0, Long.MAX_VALUE, shared);
+                } catch (IOException e) {
+                    raf.close();
+                    raf = null;
+                    throw e;
+                }
+            }
+            count++;
+        }
+
+        void release() throws IOException {
+            try {
+                unlock();
+            } finally {
+                unreference(this);
+            }
+        }
+
+        private synchronized void unlock() throws IOException {
+            if (--count > 0) {
+                return;
+            }
+            try {
+                lock.release();
+            } finally {
+                lock = null;
+                raf.close();
+                raf = null;
+            }
+        }
+    }
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    private final boolean useFileLocks;
+
+    /**
+     * @param stripes      the number of in-process locks
+     * @param useFileLocks whether to lock against other processes as well
+     */
+    SyncLocks(final int stripes, final boolean useFileLocks) {
+        this.stripes = new ReentrantReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.useFileLocks = useFileLocks;
+    }
+
+    int getStripeIndex(final String key) {
+        // spread the bits, String.hashCode is weak in the low ones
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return (h & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    ReentrantReadWriteLock getStripe(final int index) {
+        return stripes[index];
+    }
+
+    boolean isUsingFileLocks() {
+        return useFileLocks;
+    }
+
+    /**
+     * Lock the file of a key against other processes. The caller must hold
+     * the stripe of the key, so no thread of this process holds the file
+     * lock in the other mode.
+     */
+    FileLockHolder lockFile(
+            final File directory,
+            final String key,
+            final boolean shared) throws IOException {
+
+        final File file = new File(directory.getAbsoluteFile(),
+                key.replaceAll("[^A-Za-z0-9._-]", "_") + ".lock");
+        final FileLockHolder holder;
+        synchronized (fileLocks) {
+            FileLockHolder existing = fileLocks.get(file);
+            if (existing == null) {
+                existing = new FileLockHolder(file);
+                fileLocks.put(file, existing);
+            }
+            existing.references++;
+            holder = existing;
+        }
+        try {
+            holder.acquire(shared);
+        } catch (IOException e) {
+            unreference(holder);
+            throw e;
+        }
+        return holder;
+    }
+
+    /**
+     * Forget a holder once no context uses it any more, so the registry
+     * does not grow with every key ever locked.
+     */
+    private static void unreference(final FileLockHolder holder) {
+        synchronized (fileLocks) {
+            if (--holder.references == 0) {
+                fileLocks.remove(holder.file);
+            }
+        }
+    }
+
+    static int getFileLockCount() {
+        synchronized (fileLocks) {
+            return fileLocks.size();
+        }
+    }
+}
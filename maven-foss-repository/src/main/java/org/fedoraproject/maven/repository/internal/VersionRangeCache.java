@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sonatype.aether.resolution.VersionRangeRequest;
+import org.sonatype.aether.resolution.VersionRangeResult;
+import org.sonatype.aether.version.Version;
+
+/**
+ * Caches resolved version ranges by their coordinates and range
+ * specification. The parsed {@link Version} objects are kept with the
+ * range, so a cached range is neither resolved nor parsed again.
+ * <p/>
+ * Results are copied in and out of the cache, so callers mutating a result
+ * do not affect the cache.
+ */
+class VersionRangeCache {
+    private final ConcurrentMap<String, VersionRangeResult> entries =
+            new ConcurrentHashMap<String, VersionRangeResult>();
+
+    /**
+     * @param key the coordinates of the requested artifact, see
+     *            {@link NegativeLookupCache#key(org.sonatype.aether.artifact.Artifact)}
+     * @return a copy of the cached range answering the given request, or
+     *         {@code null}
+     */
+    VersionRangeResult get(
+            final String key,
+            final VersionRangeRequest request) {
+
+        final VersionRangeResult result = entries.get(key);
+        return result != null ? copy(result, request) : null;
+    }
+
+    void put(final String key, final VersionRangeResult result) {
+        entries.put(key, copy(result, result.getRequest()));
+    }
+
+    private static VersionRangeResult copy(
+            final VersionRangeResult result,
+            final VersionRangeRequest request) {
+
+        final VersionRangeResult copy = new VersionRangeResult(request)
+                .setVersionConstraint(result.getVersionConstraint());
+        for (Version version : result.getVersions()) {
+            copy.addVersion(version)
+                    .setRepository(version, result.getRepository(version));
+        }
+        for (Exception exception : result.getExceptions()) {
+            copy.addException(exception);
+        }
+        return copy;
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
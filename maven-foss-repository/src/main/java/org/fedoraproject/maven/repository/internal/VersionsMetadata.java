@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Maintains the list of versions in the metadata of a groupId and
+ * artifactId, the maven-metadata.xml next to the version directories.
+ */
+final class VersionsMetadata {
+    private VersionsMetadata() {
+    }
+
+    /**
+     * Add versions to a metadata file, creating it if needed. The caller
+     * must hold the lock of the metadata.
+     */
+    static void addVersions(
+            final File file,
+            final String groupId,
+            final String artifactId,
+            final Collection<String> versions) throws IOException {
+
+        Metadata metadata = read(file);
+        if (metadata == null) {
+            metadata = new Metadata();
+            metadata.setGroupId(groupId);
+            metadata.setArtifactId(artifactId);
+        }
+        Versioning versioning = metadata.getVersioning();
+        if (versioning == null) {
+            versioning = new Versioning();
+            metadata.setVersioning(versioning);
+        }
+        for (String version : versions) {
+            if (!versioning.getVersions().contains(version)) {
+                versioning.addVersion(version);
+            }
+            versioning.setLatest(version);
+            if (!version.endsWith("SNAPSHOT")) {
+                versioning.setRelease(version);
+            }
+        }
+        versioning.updateTimestamp();
+
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        final File temp = new File(directory, '.' + file.getName() + ".fre-tmp");
+        final OutputStream out = new FileOutputStream(temp);
+        try {
+            new MetadataXpp3Writer().write(out, metadata);
+        } finally {
+            out.close();
+        }
+        ArtifactFiles.rename(temp, file);
+    }
+
+    private static Metadata read(final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final InputStream in = new FileInputStream(file);
+        try {
+            return new MetadataXpp3Reader().read(in, false);
+        } catch (XmlPullParserException e) {
+            // start over rather than fail the build on broken metadata
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+/**
+ * A single {@code <dependency>} of a depmap file, mapping maven coordinates
+ * onto the coordinates of a jar in the JPP repository.
+ */
+class DepmapEntry {
+    final String mavenGroupId;
+    final String mavenArtifactId;
+    final String mavenVersion;
+    // all null if the dependency should be dropped
+    final String jppGroupId;
+    final String jppArtifactId;
+    final String jppVersion;
+
+    DepmapEntry(
+            String mavenGroupId,
+            String mavenArtifactId,
+            String mavenVersion,
+            String jppGroupId,
+            String jppArtifactId,
+            String jppVersion) {
+
+        this.mavenGroupId = mavenGroupId;
+        this.mavenArtifactId = mavenArtifactId;
+        this.mavenVersion = mavenVersion;
+        this.jppGroupId = jppGroupId;
+        this.jppArtifactId = jppArtifactId;
+        this.jppVersion = jppVersion;
+    }
+
+    /**
+     * Returns whether the depmap lists no jpp artifact, meaning the
+     * dependency should be dropped.
+     */
+    boolean isDropped() {
+        return jppGroupId == null;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The entries of a single depmap file, together with the size and
+ * modification time the file had when it was parsed.
+ */
+class DepmapFragment {
+    final String path;
+    final long lastModified;
+    final long length;
+    final List<DepmapEntry> entries;
+
+    DepmapFragment(
+            String path,
+            long lastModified,
+            long length,
+            List<DepmapEntry> entries) {
+
+        this.path = path;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns whether the file has not changed since it was parsed.
+     */
+    boolean isUpToDate(File file) {
+        return file.getPath().equals(path)
+                && file.lastModified() == lastModified
+                && file.length() == length;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary file holding the parsed entries of every depmap file, so that
+ * unchanged depmap files need not be parsed again on the next start.
+ * <p/>
+ * Layout: magic, format version, number of fragments and then for every
+ * fragment its path, modification time, length and entries. Strings are
+ * stored as their UTF-8 length followed by the bytes, -1 denotes null.
+ */
+class DepmapIndex {
+    private static final int MAGIC = 0x46524544; // "FRED"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // the smallest fragment: a null path, the times and no entries
+    private static final int MIN_FRAGMENT_SIZE = 4 + 8 + 8 + 4;
+
+    // the smallest entry: six null strings
+    private static final int MIN_ENTRY_SIZE = 6 * 4;
+
+    private DepmapIndex() {
+    }
+
+    /**
+     * Reads the fragments stored in the given index file.
+     *
+     * @return the fragments by path in the order they were written, empty if
+     *         the index does not exist or can not be read, in which case
+     *         every depmap file is parsed again
+     */
+    static Map<String, DepmapFragment> read(File indexFile) {
+        final Map<String, DepmapFragment> fragments =
+                new LinkedHashMap<String, DepmapFragment>();
+        if (!indexFile.isFile()) {
+            return fragments;
+        }
+        try {
+            final ByteBuffer buffer = map(indexFile);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                MavenJPackageDepmap.debug("Ignoring depmap index of unknown format: "
+                        + indexFile);
+                return fragments;
+            }
+            final int fragmentCount = getCount(buffer, MIN_FRAGMENT_SIZE);
+            for (int i = 0; i < fragmentCount; i++) {
+                final String path = getString(buffer);
+                final long lastModified = buffer.getLong();
+                final long length = buffer.getLong();
+                final int entryCount = getCount(buffer, MIN_ENTRY_SIZE);
+                final List<DepmapEntry> entries =
+                        new ArrayList<DepmapEntry>(entryCount);
+                for (int j = 0; j < entryCount; j++) {
+                    entries.add(new DepmapEntry(getString(buffer),
+                            getString(buffer), getString(buffer),
+                            getString(buffer), getString(buffer),
+                            getString(buffer)));
+                }
+                fragments.put(path, new DepmapFragment(path, lastModified,
+                        length, entries));
+            }
+            return fragments;
+        } catch (IOException e) {
+            MavenJPackageDepmap.debug("Unable to read depmap index " + indexFile
+                    + ": " + e);
+        } catch (BufferUnderflowException e) {
+            MavenJPackageDepmap.debug("Ignoring truncated depmap index "
+                    + indexFile);
+        } catch (RuntimeException e) {
+            // a broken index must never keep the depmap from loading
+            MavenJPackageDepmap.debug("Ignoring corrupt depmap index "
+                    + indexFile + ": " + e);
+        }
+        fragments.clear();
+        return fragments;
+    }
+
+    /**
+     * Writes the given fragments to the index file. The index is written to
+     * a temporary file first, which then replaces the index, so concurrent
+     * readers never see a partial index.
+     */
+    static void write(File indexFile, List<DepmapFragment> fragments) {
+        final File dir = indexFile.getAbsoluteFile().getParentFile();
+        File tmpFile = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            tmpFile = File.createTempFile(indexFile.getName(), ".tmp", dir);
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(fragments.size());
+                for (DepmapFragment fragment : fragments) {
+                    putString(out, fragment.path);
+                    out.writeLong(fragment.lastModified);
+                    out.writeLong(fragment.length);
+                    out.writeInt(fragment.entries.size());
+                    for (DepmapEntry entry : fragment.entries) {
+                        putString(out, entry.mavenGroupId);
+                        putString(out, entry.mavenArtifactId);
+                        putString(out, entry.mavenVersion);
+                        putString(out, entry.jppGroupId);
+                        putString(out, entry.jppArtifactId);
+                        putString(out, entry.jppVersion);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(indexFile)) {
+                // renameTo does not replace existing files on every platform
+                indexFile.delete();
+                if (!tmpFile.renameTo(indexFile)) {
+                    throw new IOException("Unable to rename " + tmpFile
+                            + " to " + indexFile);
+                }
+            }
+            tmpFile = null;
+        } catch (IOException e) {
+            MavenJPackageDepmap.debug("Unable to write depmap index "
+                    + indexFile + ": " + e);
+        } finally {
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel has been closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a number of items, each of which takes at least the given number
+     * of bytes, so a corrupt count can not make us allocate more than the
+     * index holds.
+     */
+    private static int getCount(ByteBuffer buffer, int minItemSize)
+            throws IOException {
+
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minItemSize) {
+            throw new IOException("Invalid count " + count + " at position "
+                    + (buffer.position() - 4));
+        }
+        return count;
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        final int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length " + length
+                    + " at position " + (buffer.position() - 4));
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void putString(DataOutputStream out, String value)
+            throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
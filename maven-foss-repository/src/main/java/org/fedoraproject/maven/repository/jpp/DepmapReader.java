@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader for depmap files.
+ * <p/>
+ * Fragments are not proper xml files (they have no root element), so the
+ * file is read behind a {@code <deps>} start tag and in front of a
+ * {@code </deps>} end tag. The file itself is streamed through a buffer
+ * and {@code <dependency>} elements are turned into entries as soon as
+ * they have been read, no document is ever built.
+ */
+class DepmapReader {
+    private static final byte[] START_TAG = "<deps>".getBytes();
+    private static final byte[] END_TAG = "</deps>".getBytes();
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The version of a definition which does not list a version.
+     */
+    static final String NO_VERSION = "DUMMY_VER";
+
+    // factories are expensive to look up, but not guaranteed to be thread-safe
+    private static final ThreadLocal<XMLInputFactory> FACTORY =
+            new ThreadLocal<XMLInputFactory>() {
+                @Override
+                protected XMLInputFactory initialValue() {
+                    final XMLInputFactory factory =
+                            XMLInputFactory.newInstance();
+                    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+                            Boolean.TRUE);
+                    factory.setProperty(XMLInputFactory.IS_COALESCING,
+                            Boolean.TRUE);
+                    factory.setProperty(XMLInputFactory.SUPPORT_DTD,
+                            Boolean.FALSE);
+                    return factory;
+                }
+            };
+
+    private static class ArtifactDefinition {
+        String groupId = null;
+        String artifactId = null;
+        String version = null;
+    }
+
+    private DepmapReader() {
+    }
+
+    /**
+     * Reads all dependencies of the given depmap file.
+     *
+     * @return the entries in the order in which they appear in the file
+     */
+    static List<DepmapEntry> read(String fileName)
+            throws IOException, XMLStreamException {
+
+        final List<DepmapEntry> entries = new ArrayList<DepmapEntry>();
+        final InputStream in = new SequenceInputStream(
+                new ByteArrayInputStream(START_TAG),
+                new SequenceInputStream(
+                        new BufferedInputStream(
+                                new FileInputStream(fileName), BUFFER_SIZE),
+                        new ByteArrayInputStream(END_TAG)));
+        try {
+            final XMLStreamReader reader =
+                    FACTORY.get().createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "dependency".equals(reader.getLocalName())) {
+                        if (!readDependency(reader, entries)) {
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Reads a dependency up to and including its end tag.
+     *
+     * @return false if the rest of the file must be skipped
+     */
+    private static boolean readDependency(
+            XMLStreamReader reader,
+            List<DepmapEntry> entries)
+            throws XMLStreamException {
+
+        ArtifactDefinition mavenAD = null;
+        ArtifactDefinition jppAD = null;
+        int mavenCount = 0;
+        int jppCount = 0;
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String name = reader.getLocalName();
+                if ("maven".equals(name)) {
+                    mavenCount++;
+                    mavenAD = readArtifactDefinition(reader);
+                } else if ("jpp".equals(name)) {
+                    jppCount++;
+                    jppAD = readArtifactDefinition(reader);
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        if (mavenCount != 1) {
+            MavenJPackageDepmap.debug("Number of maven sub-elements is not 1. Bailing from depmap generation");
+            return false;
+        }
+        if (mavenAD == null) {
+            return true;
+        }
+        if (jppCount == 1 && jppAD != null) {
+            entries.add(new DepmapEntry(mavenAD.groupId, mavenAD.artifactId,
+                    mavenAD.version, jppAD.groupId, jppAD.artifactId,
+                    jppAD.version));
+        } else {
+            if (MavenJPackageDepmap.isDebugEnabled()) {
+                MavenJPackageDepmap.debug("Number of jpp sub-elements is not 1. Dropping dependency for "
+                        + mavenAD.groupId + ":" + mavenAD.artifactId);
+            }
+            entries.add(new DepmapEntry(mavenAD.groupId, mavenAD.artifactId,
+                    mavenAD.version, null, null, null));
+        }
+        return true;
+    }
+
+    /**
+     * Reads a maven or jpp element up to and including its end tag.
+     *
+     * @return the definition, or null if it is incomplete
+     */
+    private static ArtifactDefinition readArtifactDefinition(
+            XMLStreamReader reader)
+            throws XMLStreamException {
+
+        final ArtifactDefinition ad = new ArtifactDefinition();
+        int groupIdCount = 0;
+        int artifactIdCount = 0;
+        int versionCount = 0;
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String name = reader.getLocalName();
+                if ("groupId".equals(name)) {
+                    groupIdCount++;
+                    ad.groupId = readText(reader);
+                } else if ("artifactId".equals(name)) {
+                    artifactIdCount++;
+                    ad.artifactId = readText(reader);
+                } else if ("version".equals(name)) {
+                    versionCount++;
+                    ad.version = readText(reader);
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        if (groupIdCount != 1) {
+            MavenJPackageDepmap.debug("groupId definition not found in depmap");
+            return null;
+        }
+        if (artifactIdCount != 1) {
+            MavenJPackageDepmap.debug("artifactId definition not found in depmap");
+            return null;
+        }
+        if (versionCount != 1) {
+            ad.version = NO_VERSION;
+        }
+        return ad;
+    }
+
+    /**
+     * Reads all text up to and including the end tag of the current element.
+     */
+    private static String readText(XMLStreamReader reader)
+            throws XMLStreamException {
+
+        String text = "";
+        StringBuilder buffer = null;
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS
+                    || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                if (buffer != null) {
+                    buffer.append(reader.getText());
+                } else if (text.length() == 0) {
+                    text = reader.getText();
+                } else {
+                    buffer = new StringBuilder(text).append(reader.getText());
+                }
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return buffer != null ? buffer.toString() : text;
+    }
+}
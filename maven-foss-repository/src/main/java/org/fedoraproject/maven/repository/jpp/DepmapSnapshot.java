@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable view of the depmap, built from the fragments of all depmap
+ * files. A new snapshot replaces the old one whenever depmap files change,
+ * so lookups never need a lock.
+ */
+class DepmapSnapshot {
+    static final DepmapSnapshot EMPTY =
+            new DepmapSnapshot(Collections.<DepmapFragment>emptyList(), true);
+
+    // by path, in the order in which they were merged
+    private final Map<String, DepmapFragment> fragments;
+
+    private final boolean processVersions;
+
+    /**
+     * All mappings of a groupId and artifactId.
+     */
+    private static class ArtifactMappings {
+        // the versionless mapping listed last, or if there is none or
+        // versions are ignored the mapping listed last
+        JppMapping defaultMapping;
+        boolean versionlessDefault;
+        // by maven version, null unless a mapping lists a version
+        Map<String, JppMapping> versions;
+    }
+
+    // groupId -> artifactId -> mappings, so lookups need not build a key
+    private final Map<String, Map<String, ArtifactMappings>> mappings =
+            new HashMap<String, Map<String, ArtifactMappings>>();
+
+    /**
+     * @param fragments       the fragments to merge, later mappings override
+     *                        earlier ones
+     * @param processVersions whether to keep the mappings of each version,
+     *                        if not the mapping listed last always wins
+     */
+    DepmapSnapshot(List<DepmapFragment> fragments, boolean processVersions) {
+        this.processVersions = processVersions;
+        final Map<String, DepmapFragment> byPath =
+                new LinkedHashMap<String, DepmapFragment>();
+        for (DepmapFragment fragment : fragments) {
+            byPath.put(fragment.path, fragment);
+            for (DepmapEntry entry : fragment.entries) {
+                add(entry);
+            }
+        }
+        this.fragments = Collections.unmodifiableMap(byPath);
+    }
+
+    private void add(DepmapEntry entry) {
+        final JppMapping mapping;
+        if (entry.isDropped()) {
+            mapping = new JppMapping("JPP/maven", "empty-dep",
+                    entry.mavenVersion);
+        } else {
+            if (MavenJPackageDepmap.isDebugEnabled()) {
+                MavenJPackageDepmap.debug("*** Adding: " + entry.mavenGroupId
+                        + "," + entry.mavenArtifactId + " => "
+                        + entry.jppGroupId + "," + entry.jppArtifactId + ","
+                        + entry.jppVersion + " to map...");
+            }
+            mapping = new JppMapping(entry.jppGroupId, entry.jppArtifactId,
+                    entry.jppVersion);
+        }
+
+        Map<String, ArtifactMappings> artifacts =
+                mappings.get(entry.mavenGroupId);
+        if (artifacts == null) {
+            artifacts = new HashMap<String, ArtifactMappings>();
+            mappings.put(entry.mavenGroupId, artifacts);
+        }
+        ArtifactMappings artifactMappings = artifacts.get(entry.mavenArtifactId);
+        if (artifactMappings == null) {
+            artifactMappings = new ArtifactMappings();
+            artifacts.put(entry.mavenArtifactId, artifactMappings);
+        }
+        if (!processVersions) {
+            artifactMappings.defaultMapping = mapping;
+        } else if (entry.mavenVersion == null
+                || DepmapReader.NO_VERSION.equals(entry.mavenVersion)) {
+            artifactMappings.defaultMapping = mapping;
+            artifactMappings.versionlessDefault = true;
+        } else {
+            if (!artifactMappings.versionlessDefault) {
+                artifactMappings.defaultMapping = mapping;
+            }
+            if (artifactMappings.versions == null) {
+                artifactMappings.versions = new HashMap<String, JppMapping>(4);
+            }
+            artifactMappings.versions.put(entry.mavenVersion, mapping);
+        }
+    }
+
+    /**
+     * Returns the mapping of the given version, falling back to the default
+     * mapping of the groupId and artifactId.
+     *
+     * @param version the version, or null to ignore versions
+     */
+    JppMapping getMapping(String groupId, String artifactId, String version) {
+        final ArtifactMappings artifactMappings =
+                getArtifactMappings(groupId, artifactId);
+        if (artifactMappings == null) {
+            return null;
+        }
+        if (version != null && artifactMappings.versions != null) {
+            final JppMapping mapping = artifactMappings.versions.get(version);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        return artifactMappings.defaultMapping;
+    }
+
+    /**
+     * Returns whether a mapping lists exactly the given version.
+     */
+    boolean hasVersionedMapping(
+            String groupId,
+            String artifactId,
+            String version) {
+
+        final ArtifactMappings artifactMappings =
+                getArtifactMappings(groupId, artifactId);
+        return artifactMappings != null && artifactMappings.versions != null
+                && artifactMappings.versions.containsKey(version);
+    }
+
+    /**
+     * Returns the versions which mappings of the groupId and artifactId list
+     * explicitly, in no particular order.
+     */
+    Set<String> getVersions(String groupId, String artifactId) {
+        final ArtifactMappings artifactMappings =
+                getArtifactMappings(groupId, artifactId);
+        if (artifactMappings == null || artifactMappings.versions == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(artifactMappings.versions.keySet());
+    }
+
+    private ArtifactMappings getArtifactMappings(
+            String groupId,
+            String artifactId) {
+
+        final Map<String, ArtifactMappings> artifacts = mappings.get(groupId);
+        return artifacts != null ? artifacts.get(artifactId) : null;
+    }
+
+    Map<String, DepmapFragment> getFragments() {
+        return fragments;
+    }
+}
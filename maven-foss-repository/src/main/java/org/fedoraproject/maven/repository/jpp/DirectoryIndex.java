@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches directory listings, so checking whether a file exists is a hash
+ * lookup instead of a stat. A directory is listed the first time a file in
+ * it is looked up, and listed again once its modification time changed.
+ * The modification time itself is checked at most once per interval.
+ */
+class DirectoryIndex {
+    private static class Listing {
+        final long lastModified;
+        final Set<String> files;
+        final Set<String> directories;
+        volatile long checked;
+
+        Listing(long lastModified, Set<String> files,
+                Set<String> directories, long checked) {
+
+            this.lastModified = lastModified;
+            this.files = files;
+            this.directories = directories;
+            this.checked = checked;
+        }
+    }
+
+    private static final Listing MISSING = new Listing(0,
+            Collections.<String>emptySet(), Collections.<String>emptySet(), 0);
+
+    private final ConcurrentMap<String, Listing> listings =
+            new ConcurrentHashMap<String, Listing>();
+
+    private final long interval;
+
+    /**
+     * @param interval the minimum number of milliseconds between two checks
+     *                 of the modification time of a directory
+     */
+    DirectoryIndex(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Equivalent of {@link File#isFile()}.
+     */
+    boolean isFile(File file) {
+        final File dir = file.getParentFile();
+        return dir != null && getListing(dir).files.contains(file.getName());
+    }
+
+    /**
+     * Equivalent of {@link File#exists()}.
+     */
+    boolean exists(File file) {
+        final File dir = file.getParentFile();
+        if (dir == null) {
+            return file.exists();
+        }
+        final Listing listing = getListing(dir);
+        return listing.files.contains(file.getName())
+                || listing.directories.contains(file.getName());
+    }
+
+    private Listing getListing(File dir) {
+        final String path = dir.getPath();
+        final Listing listing = listings.get(path);
+        if (listing != null) {
+            final long now = System.currentTimeMillis();
+            if (now - listing.checked < interval) {
+                return listing;
+            }
+            if (dir.lastModified() == listing.lastModified) {
+                listing.checked = now;
+                return listing;
+            }
+        }
+        final Listing update = scan(dir);
+        listings.put(path, update);
+        return update;
+    }
+
+    private static Listing scan(File dir) {
+        final long lastModified = dir.lastModified();
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return new Listing(lastModified, MISSING.files,
+                    MISSING.directories, System.currentTimeMillis());
+        }
+        final Set<String> files = new HashSet<String>();
+        final Set<String> directories = new HashSet<String>();
+        for (File child : children) {
+            if (child.isFile()) {
+                files.add(child.getName());
+            } else if (child.isDirectory()) {
+                directories.add(child.getName());
+            }
+        }
+        return new Listing(lastModified, files, directories,
+                System.currentTimeMillis());
+    }
+}
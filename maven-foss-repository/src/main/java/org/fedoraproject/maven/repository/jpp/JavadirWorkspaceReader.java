@@ -23,7 +23,6 @@
 package org.fedoraproject.maven.repository.jpp;
 
 import java.io.File;
-import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -37,8 +36,62 @@ public class JavadirWorkspaceReader implements WorkspaceReader {
     private static final char GROUP_SEPARATOR = '.';
     private static final char PATH_SEPARATOR = '/';
 
+    private static final String[] REPOSITORIES = {
+            "/usr/share/maven/repository/",
+            "/usr/share/maven/repository-java-jni/",
+            "/usr/share/maven/repository-jni/"};
+
+    private static final String[] POM_REPOSITORIES = {
+            "/usr/share/maven2/poms/",
+            "/usr/share/maven/poms/",
+            "/usr/share/maven-poms/"};
+
+    private static final String DEFAULT_POM_REPOSITORY =
+            "/usr/share/maven2/default_poms/";
+
+    private final String[] repositories;
+    private final String[] pomRepositories;
+    private final String defaultPomRepository;
+
+    // directory listings of the repositories above
+    private final DirectoryIndex index = new DirectoryIndex(
+            Long.getLong("fre.javadir.rescan.interval", 1000));
+
     public JavadirWorkspaceReader() {
+        this(REPOSITORIES, POM_REPOSITORIES, DEFAULT_POM_REPOSITORY);
+    }
+
+    /**
+     * @param repositories         directories holding jars, each ending in /
+     * @param pomRepositories      directories holding poms, each ending in /
+     * @param defaultPomRepository directory holding the poms to use if none
+     *                             of the pom repositories has one
+     */
+    public JavadirWorkspaceReader(
+            String[] repositories,
+            String[] pomRepositories,
+            String defaultPomRepository) {
+
         workspaceRepository = new WorkspaceRepository("javadir-workspace");
+        this.repositories = repositories.clone();
+        this.pomRepositories = pomRepositories.clone();
+        this.defaultPomRepository = defaultPomRepository;
+    }
+
+    /**
+     * @param pomFile a pom file, may be null
+     * @return whether the pom was installed in one of the system pom
+     *         directories, which hold the JPP poms
+     */
+    public static boolean isJppPom(File pomFile) {
+        if (pomFile == null)
+            return false;
+        final String path = pomFile.getAbsolutePath();
+        for (String pomRepo : POM_REPOSITORIES) {
+            if (path.startsWith(pomRepo))
+                return true;
+        }
+        return path.startsWith(DEFAULT_POM_REPOSITORY);
     }
 
     public WorkspaceRepository getRepository() {
@@ -46,43 +99,48 @@ public class JavadirWorkspaceReader implements WorkspaceReader {
     }
 
     public File findArtifact(Artifact artifact) {
-        MavenJPackageDepmap.debug("=============JAVADIRREADER-FIND_ARTIFACT: "
-                + artifact.getArtifactId());
+        final boolean debug = MavenJPackageDepmap.isDebugEnabled();
+        if (debug)
+            MavenJPackageDepmap.debug("=============JAVADIRREADER-FIND_ARTIFACT: "
+                    + artifact.getArtifactId());
         StringBuffer path = new StringBuffer();
         File ret = new File("");
         String artifactId = artifact.getArtifactId();
         String groupId = artifact.getGroupId();
         String version = artifact.getVersion();
 
-        MavenJPackageDepmap.debug("Wanted GROUPID=" + groupId);
-        MavenJPackageDepmap.debug("Wanted ARTIFACTID=" + artifactId);
+        if (debug) {
+            MavenJPackageDepmap.debug("Wanted GROUPID=" + groupId);
+            MavenJPackageDepmap.debug("Wanted ARTIFACTID=" + artifactId);
+        }
 
         if (!groupId.startsWith("JPP")) {
             MavenJPackageDepmap map = MavenJPackageDepmap.getInstance();
-            Hashtable<String, String> newInfo = map.getMappedInfo(groupId,
-                    artifactId, version);
+            JppMapping mapping = map.getMapping(groupId, artifactId, version);
 
-            groupId = (String) newInfo.get("group");
-            artifactId = (String) newInfo.get("artifact");
+            if (mapping != null) {
+                groupId = mapping.getGroupId();
+                artifactId = mapping.getArtifactId();
+            }
+        }
+        if (debug) {
+            MavenJPackageDepmap.debug("Resolved GROUPID=" + groupId);
+            MavenJPackageDepmap.debug("Resolved ARTIFACTID=" + artifactId);
         }
-        MavenJPackageDepmap.debug("Resolved GROUPID=" + groupId);
-        MavenJPackageDepmap.debug("Resolved ARTIFACTID=" + artifactId);
 
         if (artifact.getExtension().equals("pom")) {
             path = getPOMPath(groupId, artifactId);
             ret = new File(path.toString());
         } else {
-            String repos[] = {"/usr/share/maven/repository/",
-                    "/usr/share/maven/repository-java-jni/",
-                    "/usr/share/maven/repository-jni/"};
             String relativeArtifactPath = groupId + "/" + artifactId + "."
                     + artifact.getExtension();
-            for (String repo : repos) {
+            for (String repo : repositories) {
                 path = new StringBuffer(repo + relativeArtifactPath);
                 ret = new File(path.toString());
-                if (ret.isFile()) {
-                    MavenJPackageDepmap.debug("Returning " + repo
-                            + relativeArtifactPath);
+                if (index.isFile(ret)) {
+                    if (debug)
+                        MavenJPackageDepmap.debug("Returning " + repo
+                                + relativeArtifactPath);
                     return ret;
                 }
             }
@@ -90,12 +148,14 @@ public class JavadirWorkspaceReader implements WorkspaceReader {
 
         // if file doesn't exist return null to delegate to other
         // resolvers (reactor/local repo)
-        if (ret.isFile()) {
-            MavenJPackageDepmap.debug("Returning " + path.toString());
+        if (index.isFile(ret)) {
+            if (debug)
+                MavenJPackageDepmap.debug("Returning " + path.toString());
             return ret;
         } else {
-            MavenJPackageDepmap.debug("Returning null for gid:aid =>" + groupId
-                    + ":" + artifactId);
+            if (debug)
+                MavenJPackageDepmap.debug("Returning null for gid:aid =>"
+                        + groupId + ":" + artifactId);
             return null;
         }
     }
@@ -110,17 +170,15 @@ public class JavadirWorkspaceReader implements WorkspaceReader {
         String fName = groupId.replace(PATH_SEPARATOR, GROUP_SEPARATOR) + "-"
                 + artifactId + ".pom";
         File f;
-        String[] pomRepos = {"/usr/share/maven2/poms/",
-                "/usr/share/maven/poms/", "/usr/share/maven-poms/"};
 
-        for (String pomRepo : pomRepos) {
+        for (String pomRepo : pomRepositories) {
             f = new File(pomRepo + fName);
-            if (f.exists()) {
+            if (index.exists(f)) {
                 return new StringBuffer(f.getPath());
             }
         }
 
         // final fallback to m2 default poms
-        return new StringBuffer("/usr/share/maven2/default_poms/" + fName);
+        return new StringBuffer(defaultPomRepository + fName);
     }
 }
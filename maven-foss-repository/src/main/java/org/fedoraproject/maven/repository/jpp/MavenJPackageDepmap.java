@@ -23,91 +23,134 @@
 package org.fedoraproject.maven.repository.jpp;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.StringTokenizer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.fedoraproject.maven.repository.ResolutionTrace;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+public class MavenJPackageDepmap {
+    private static final boolean PROCESS_VERSIONS =
+            System.getProperty("maven.ignore.versions") == null
+                    && System.getProperty("maven.local.mode") == null;
+
+    private static class InstanceHolder {
+        static final MavenJPackageDepmap INSTANCE = newDefaultInstance();
+    }
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+    private final File indexFile;
 
-public class MavenJPackageDepmap {
-    //private static boolean PROCESS_VERSIONS = (System.getProperty("maven.ignore.versions") == null && System.getProperty("maven.local.mode") == null);
-    private static boolean PROCESS_VERSIONS = false;
+    private final boolean processVersions;
+
+    private final AtomicReference<DepmapSnapshot> snapshot =
+            new AtomicReference<DepmapSnapshot>(DepmapSnapshot.EMPTY);
+
+    private boolean loaded;
+
+    // bumped whenever the snapshot is replaced
+    private volatile long generation;
 
-    private static class ArtifactDefinition {
-        String groupId = null;
-        String artifactId = null;
-        String version = null;
+    private Timer watcher;
+
+    /**
+     * @param indexFile the index of parsed depmap files, or null to always
+     *                  parse all depmap files
+     */
+    MavenJPackageDepmap(File indexFile) {
+        this(indexFile, PROCESS_VERSIONS);
     }
 
     /**
-     * @author Stanislav Ochotnicky <sochotnicky@redhat.com>
-     *         <p/>
-     *         This class is used to wrap around fragments that are mapping
-     *         artifacts to jar files in our _javadir. These used to be
-     *         processed in a macro after every package installation. Fragments
-     *         themselves are not proper xml files (they have no root element)
-     *         so we have to fix them by wrapping them in one root element.
+     * @param processVersions whether mappings of a version take precedence,
+     *                        if not the mapping listed last wins
      */
-    private static class WrapFragmentStream extends InputStream {
-        String startTag = "<deps>";
-        String endTag = "</deps>";
-        byte fragmentContent[];
-        int position;
-
-        WrapFragmentStream(String fragmentPath) throws IOException {
-            FileInputStream fin = new FileInputStream(fragmentPath);
-            int nBytes = fin.available();
-            byte tmpContent[] = new byte[nBytes];
-            fin.read(tmpContent);
-            fin.close();
-            byte startBytes[] = startTag.getBytes();
-            byte endBytes[] = endTag.getBytes();
-            fragmentContent = new byte[nBytes + startBytes.length
-                    + endBytes.length];
-            System.arraycopy(startBytes, 0, fragmentContent, 0,
-                    startBytes.length);
-            System.arraycopy(tmpContent, 0, fragmentContent, startBytes.length,
-                    tmpContent.length);
-            System.arraycopy(endBytes, 0, fragmentContent, startBytes.length
-                    + tmpContent.length, endBytes.length);
-            position = 0;
-        }
+    MavenJPackageDepmap(File indexFile, boolean processVersions) {
+        this.indexFile = indexFile;
+        this.processVersions = processVersions;
+    }
 
-        public int read() throws IOException {
-            if (position < fragmentContent.length) {
-                return fragmentContent[position++];
-            } else {
-                return -1;
-            }
+    private static MavenJPackageDepmap newDefaultInstance() {
+        final String indexFileName = System.getProperty("fre.depmap.index",
+                System.getProperty("user.home") + "/.m2/fre-depmap.index");
+        final MavenJPackageDepmap depmap = new MavenJPackageDepmap(
+                "none".equals(indexFileName) ? null : new File(indexFileName));
+        depmap.reload();
+
+        final long interval = Long.getLong("fre.depmap.reload.interval", 0);
+        if (interval > 0) {
+            depmap.watch(interval * 1000);
         }
+        return depmap;
     }
 
-    private static MavenJPackageDepmap instance;
-    private static Hashtable<String, String> jppArtifactMap;
+    public static MavenJPackageDepmap getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
 
-    private MavenJPackageDepmap() {
-        jppArtifactMap = new Hashtable<String, String>();
-        buildJppArtifactMap();
+    /**
+     * Returns the JPP coordinates the given maven artifact is mapped onto.
+     * A mapping listing exactly the given version takes precedence over the
+     * versionless mapping of the groupId and artifactId, unless versions are
+     * ignored (maven.ignore.versions or maven.local.mode).
+     *
+     * @return the mapping, or null if the depmap does not list the artifact
+     */
+    public JppMapping getMapping(
+            String groupId,
+            String artifactId,
+            String version) {
+
+        return snapshot.get().getMapping(groupId, artifactId,
+                processVersions ? version : null);
     }
 
-    public static MavenJPackageDepmap getInstance() {
-        if (instance == null) {
-            instance = new MavenJPackageDepmap();
-        }
+    /**
+     * Returns whether the depmap maps exactly the given version onto a JPP
+     * artifact, as it does for compat packages.
+     */
+    public boolean hasVersionedMapping(
+            String groupId,
+            String artifactId,
+            String version) {
 
-        return instance;
+        return processVersions
+                && snapshot.get().hasVersionedMapping(groupId, artifactId,
+                        version);
     }
 
+    /**
+     * Returns the maven versions which the depmap lists for the given
+     * groupId and artifactId, none if versions are ignored.
+     */
+    public Set<String> getVersions(String groupId, String artifactId) {
+        if (!processVersions) {
+            return Collections.emptySet();
+        }
+        return snapshot.get().getVersions(groupId, artifactId);
+    }
+
+    /**
+     * @deprecated use {@link #getMapping(String, String, String)}
+     */
+    @Deprecated
     public Hashtable<String, String> getMappedInfo(
             Hashtable<String, String> mavenDep) {
 
@@ -116,30 +159,22 @@ public class MavenJPackageDepmap {
                 (String) mavenDep.get("version"));
     }
 
+    /**
+     * @deprecated use {@link #getMapping(String, String, String)}, which
+     *             does not allocate on every call
+     */
+    @Deprecated
     public Hashtable<String, String> getMappedInfo(
             String groupId,
             String artifactId,
             String version) {
 
-        Hashtable<String, String> jppDep;
-        String idToCheck, jppCombination;
-
-        if (PROCESS_VERSIONS) {
-            idToCheck = groupId + "," + artifactId + "," + version;
-        } else {
-            idToCheck = groupId + "," + artifactId;
-        }
-
-        jppCombination = (String) jppArtifactMap.get(idToCheck);
-        jppDep = new Hashtable<String, String>();
-        if (jppCombination != null && jppCombination != "") {
-
-            StringTokenizer st = new StringTokenizer(jppCombination, ",");
-
-            jppDep.put("group", st.nextToken());
-            jppDep.put("artifact", st.nextToken());
-            jppDep.put("version", st.nextToken());
-
+        final JppMapping mapping = getMapping(groupId, artifactId, version);
+        final Hashtable<String, String> jppDep = new Hashtable<String, String>();
+        if (mapping != null) {
+            jppDep.put("group", mapping.getGroupId());
+            jppDep.put("artifact", mapping.getArtifactId());
+            jppDep.put("version", mapping.getVersion());
         } else {
             jppDep.put("group", groupId);
             jppDep.put("artifact", artifactId);
@@ -157,24 +192,121 @@ public class MavenJPackageDepmap {
             String artifactId,
             String version) {
 
-        String idToCheck;
+        // dependencies without a jpp counterpart are not mapped onto nothing,
+        // but onto JPP/maven:empty-dep
+        return false;
+    }
 
-        if (PROCESS_VERSIONS) {
-            idToCheck = groupId + "," + artifactId + "," + version;
+    /**
+     * Brings the depmap up to date with the depmap files. Only files that
+     * are new or changed since the last load are parsed; the new snapshot
+     * replaces the current one atomically, so concurrent lookups see either
+     * the old or the new depmap.
+     *
+     * @return whether any depmap file changed
+     */
+    public synchronized boolean reload() {
+        final List<File> depmapFiles = getDepmapFiles();
+
+        // the first load starts from the index, later ones from the snapshot
+        final Map<String, DepmapFragment> known;
+        if (loaded) {
+            known = snapshot.get().getFragments();
+        } else if (indexFile != null) {
+            known = DepmapIndex.read(indexFile);
         } else {
-            idToCheck = groupId + "," + artifactId;
+            known = Collections.<String, DepmapFragment>emptyMap();
+        }
+
+        final List<File> staleFiles = new ArrayList<File>();
+        for (File file : depmapFiles) {
+            final DepmapFragment fragment = known.get(file.getPath());
+            if (fragment == null || !fragment.isUpToDate(file)) {
+                staleFiles.add(file);
+            }
+        }
+        final Map<File, DepmapFragment> parsed =
+                processDepmapFiles(staleFiles);
+
+        // merge in the original order, so later files override earlier ones
+        final List<DepmapFragment> fragments =
+                new ArrayList<DepmapFragment>(depmapFiles.size());
+        boolean changed = false;
+        for (File file : depmapFiles) {
+            DepmapFragment fragment;
+            if (parsed.containsKey(file)) {
+                fragment = parsed.get(file);
+                // files that can not be parsed are not indexed
+                changed |= fragment != null;
+            } else {
+                fragment = known.get(file.getPath());
+            }
+            if (fragment != null) {
+                fragments.add(fragment);
+            }
+        }
+        if (fragments.size() != known.size()) {
+            // depmap files have been removed
+            changed = true;
+        }
+        if (changed && indexFile != null) {
+            if (isDebugEnabled())
+                debug("Writing depmap index: " + indexFile);
+            DepmapIndex.write(indexFile, fragments);
         }
 
-        return jppArtifactMap.get(idToCheck) != null
-                && jppArtifactMap.get(idToCheck).equals("");
+        if (changed || !loaded) {
+            snapshot.set(new DepmapSnapshot(fragments, processVersions));
+            generation++;
+            loaded = true;
+        }
+        return changed;
+    }
 
+    /**
+     * Returns a number that changes whenever a reload replaces the depmap,
+     * so whatever is derived from it can tell when it is stale.
+     */
+    public long getGeneration() {
+        return generation;
     }
 
-    private static void buildJppArtifactMap() {
-        if (!PROCESS_VERSIONS) {
-            debug("Processing file: /usr/share/java-utils/xml/maven2-versionless-depmap.xml");
-            processDepmapFile("/etc/maven/maven2-versionless-depmap.xml");
+    /**
+     * Reloads the depmap in the background whenever depmap files change.
+     * Java 6 has no file system notifications, so the depmap files are
+     * checked for changes every interval.
+     *
+     * @param interval the interval in milliseconds
+     */
+    public synchronized void watch(long interval) {
+        if (watcher != null) {
+            watcher.cancel();
         }
+        watcher = new Timer("fre-depmap-watcher", true);
+        watcher.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    if (reload()) {
+                        debug("Reloaded depmap");
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("ERROR: Reloading of depmap failed");
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Returns the depmap files in the order in which they must be processed,
+     * later mappings override earlier ones.
+     */
+    List<File> getDepmapFiles() {
+        final List<File> files = new ArrayList<File>();
+        // the versionless depmap provides the defaults for versioned lookups
+        debug("Processing file: /usr/share/java-utils/xml/maven2-versionless-depmap.xml");
+        files.add(new File("/etc/maven/maven2-versionless-depmap.xml"));
 
         // process fragments in etc
         File fragmentDir = new File("/etc/maven/fragments");
@@ -182,7 +314,7 @@ public class MavenJPackageDepmap {
         if (flist != null) {
             java.util.Arrays.sort(flist);
             for (String fragFilename : flist)
-                processDepmapFile("/etc/maven/fragments/" + fragFilename);
+                files.add(new File("/etc/maven/fragments/" + fragFilename));
         }
 
         // process fragments is usr. Once packages are rebuilt, we can skip
@@ -192,128 +324,133 @@ public class MavenJPackageDepmap {
         if (flist != null) {
             java.util.Arrays.sort(flist);
             for (String fragFilename : flist)
-                processDepmapFile("/usr/share/maven-fragments/" + fragFilename);
+                files.add(new File("/usr/share/maven-fragments/" + fragFilename));
         }
 
         String customFileName = System.getProperty("fre.depmap.file",
                 null);
         if (customFileName != null) {
-            debug("Processing file: " + customFileName);
-            processDepmapFile(customFileName);
+            if (isDebugEnabled())
+                debug("Processing file: " + customFileName);
+            files.add(new File(customFileName));
         }
+        return files;
+    }
 
+    /**
+     * Parses the given depmap files, on as many threads as there are
+     * processors unless fre.depmap.threads says otherwise.
+     *
+     * @return the parsed fragments by file, null for files that could not be
+     *         parsed
+     */
+    private static Map<File, DepmapFragment> processDepmapFiles(
+            List<File> files) {
+
+        final Map<File, DepmapFragment> fragments =
+                new HashMap<File, DepmapFragment>();
+        final int threads = Math.min(files.size(),
+                Integer.getInteger("fre.depmap.threads",
+                        Runtime.getRuntime().availableProcessors()));
+        if (threads <= 1) {
+            for (File file : files) {
+                fragments.put(file, processDepmapFile(file));
+            }
+            return fragments;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable,
+                                "fre-depmap-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            final Map<File, Future<DepmapFragment>> futures =
+                    new HashMap<File, Future<DepmapFragment>>();
+            for (final File file : files) {
+                futures.put(file, executor.submit(new Callable<DepmapFragment>() {
+                    @Override
+                    public DepmapFragment call() {
+                        return processDepmapFile(file);
+                    }
+                }));
+            }
+            for (Map.Entry<File, Future<DepmapFragment>> entry : futures.entrySet()) {
+                fragments.put(entry.getKey(), entry.getValue().get());
+            }
+            return fragments;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while loading depmap files", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private static void processDepmapFile(String fileName) {
-        Document mapDocument;
-        debug("Loading depmap file: " + fileName);
+    /**
+     * Parses a depmap file.
+     *
+     * @return the parsed fragment, or null if the file could not be parsed
+     */
+    private static DepmapFragment processDepmapFile(File file) {
+        final String fileName = file.getPath();
+        // stat before reading, so a concurrent change is picked up next time
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        final List<DepmapEntry> entries;
+        if (isDebugEnabled())
+            debug("Loading depmap file: " + fileName);
         try {
-            DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
-            fact.setNamespaceAware(true);
-            DocumentBuilder builder = fact.newDocumentBuilder();
-            // we can wrap even old depmaps, no harm done
-            WrapFragmentStream wfs = new WrapFragmentStream(fileName);
-            mapDocument = builder.parse(wfs);
-            wfs.close();
+            entries = DepmapReader.read(fileName);
         } catch (FileNotFoundException fnfe) {
             System.err.println("ERROR: Unable to find map file: " + fileName);
             fnfe.printStackTrace();
-            return;
+            return null;
         } catch (IOException ioe) {
             System.err
                     .println("ERROR: I/O exception occured when opening map file");
             ioe.printStackTrace();
-            return;
-        } catch (ParserConfigurationException pce) {
-            System.err
-                    .println("ERROR: Parsing of depmap file failed - configuration");
-            pce.printStackTrace();
-            return;
-        } catch (SAXException se) {
+            return null;
+        } catch (XMLStreamException xse) {
             System.err.println("ERROR: Parsing of depmap file failed");
-            se.printStackTrace();
-            return;
-        }
-
-        NodeList depNodes = (NodeList) mapDocument
-                .getElementsByTagName("dependency");
-
-        for (int i = 0; i < depNodes.getLength(); i++) {
-            Element depNode = (Element) depNodes.item(i);
-
-            NodeList mavenNodeList = (NodeList) depNode
-                    .getElementsByTagName("maven");
-            if (mavenNodeList.getLength() != 1) {
-                debug("Number of maven sub-elements is not 1. Bailing from depmap generation");
-                debug("Maven node: " + depNode.getTextContent());
-                return;
-            }
-            ArtifactDefinition mavenAD = getArtifactDefinition((Element) mavenNodeList
-                    .item(0));
-
-            ArtifactDefinition jppAD = null;
-            NodeList jppNodeList = (NodeList) depNode
-                    .getElementsByTagName("jpp");
-
-            if (jppNodeList.getLength() == 1) {
-                jppAD = getArtifactDefinition((Element) jppNodeList.item(0));
-                if (PROCESS_VERSIONS) {
-                    debug("*** Adding: " + mavenAD.groupId + ","
-                            + mavenAD.artifactId + "," + mavenAD.version
-                            + " => " + jppAD.groupId + "," + jppAD.artifactId
-                            + "," + jppAD.version + " to map...");
-
-                    jppArtifactMap.put(mavenAD.groupId + ","
-                            + mavenAD.artifactId + "," + mavenAD.version,
-                            jppAD.groupId + "," + jppAD.artifactId + ","
-                                    + jppAD.version);
-                } else {
-                    debug("*** Adding: " + mavenAD.groupId + ","
-                            + mavenAD.artifactId + " => " + jppAD.groupId + ","
-                            + jppAD.artifactId + "," + jppAD.version
-                            + " to map...");
-
-                    jppArtifactMap.put(mavenAD.groupId + ","
-                            + mavenAD.artifactId, jppAD.groupId + ","
-                            + jppAD.artifactId + "," + jppAD.version);
-                }
-            } else {
-                debug("Number of jpp sub-elements is not 1. Dropping dependency for "
-                        + mavenAD.groupId + ":" + mavenAD.artifactId);
-                jppArtifactMap.put(mavenAD.groupId + "," + mavenAD.artifactId,
-                        "JPP/maven,empty-dep," + mavenAD.version);
-            }
+            xse.printStackTrace();
+            return null;
         }
+        return new DepmapFragment(fileName, lastModified, length, entries);
     }
 
-    private static ArtifactDefinition getArtifactDefinition(Element element) {
-        ArtifactDefinition ad = new ArtifactDefinition();
+    private static final boolean DEBUG =
+            System.getProperty("maven.local.debug") != null;
 
-        NodeList nodes = element.getElementsByTagName("groupId");
-        if (nodes.getLength() != 1) {
-            debug("groupId definition not found in depmap");
-            return null;
-        }
-        ad.groupId = nodes.item(0).getTextContent();
-
-        nodes = element.getElementsByTagName("artifactId");
-        if (nodes.getLength() != 1) {
-            debug("artifactId definition not found in depmap");
-            return null;
-        }
-        ad.artifactId = nodes.item(0).getTextContent();
-
-        nodes = element.getElementsByTagName("version");
-        if (nodes.getLength() != 1) {
-            ad.version = "DUMMY_VER";
-        } else {
-            ad.version = nodes.item(0).getTextContent();
-        }
-        return ad;
+    /**
+     * @return whether {@link #debug(String)} goes anywhere, so callers can
+     *         skip building messages when it does not
+     */
+    static boolean isDebugEnabled() {
+        return DEBUG || ResolutionTrace.ENABLED;
     }
 
     public static void debug(String msg) {
-        if (System.getProperty("maven.local.debug") != null)
+        if (DEBUG)
             System.err.println(msg);
+        if (ResolutionTrace.ENABLED)
+            ResolutionTrace.message(msg);
     }
 }
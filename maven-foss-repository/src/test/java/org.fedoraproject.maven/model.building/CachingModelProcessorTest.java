@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.model.building;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.building.DefaultModelProcessor;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelProcessor;
+import org.apache.maven.model.io.DefaultModelReader;
+import org.apache.maven.model.locator.DefaultModelLocator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingModelProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ModelProcessor delegate;
+
+    private CachingModelProcessor processor;
+
+    @Before
+    public void setup() {
+        delegate = spy(new DefaultModelProcessor()
+                .setModelReader(new DefaultModelReader())
+                .setModelLocator(new DefaultModelLocator()));
+        processor = new CachingModelProcessor(delegate);
+    }
+
+    private static void writePom(File file, String version) throws IOException {
+        Writer out = new FileWriter(file);
+        try {
+            out.write("<project><modelVersion>4.0.0</modelVersion>"
+                    + "<groupId>g</groupId><artifactId>a</artifactId>"
+                    + "<version>" + version + "</version></project>");
+        } finally {
+            out.close();
+        }
+    }
+
+    private Model read(File pom) throws IOException {
+        FileModelSource source = new FileModelSource(pom);
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put(ModelProcessor.IS_STRICT, Boolean.TRUE);
+        options.put(ModelProcessor.SOURCE, source);
+        return processor.read(source.getInputStream(), options);
+    }
+
+    @Test
+    public void testParsesUnchangedPomOnce() throws IOException {
+        File pom = folder.newFile("JPP-a.pom");
+        writePom(pom, "1.0");
+
+        Model first = read(pom);
+        first.setVersion("changed by the model builder");
+        Model second = read(pom);
+
+        assertEquals("1.0", second.getVersion());
+        assertNotSame(first, second);
+        verify(delegate, times(1)).read(any(InputStream.class),
+                anyMapOf(String.class, Object.class));
+        assertEquals(1, processor.size());
+    }
+
+    @Test
+    public void testParsesChangedPomAgain() throws IOException {
+        File pom = folder.newFile("JPP-a.pom");
+        writePom(pom, "1.0");
+        read(pom);
+
+        writePom(pom, "2.0.1");
+
+        assertEquals("2.0.1", read(pom).getVersion());
+        verify(delegate, times(2)).read(any(InputStream.class),
+                anyMapOf(String.class, Object.class));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.model.building;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.DefaultModelBuilder;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.apache.maven.model.building.ModelProblem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class FossModelBuilderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DefaultModelBuilder delegate;
+
+    private FossModelBuilder builder;
+
+    private File pom;
+
+    private File parent;
+
+    @Before
+    public void setup() throws Exception {
+        pom = folder.newFile("JPP-a.pom");
+        parent = folder.newFile("JPP-parent.pom");
+
+        Model model = new Model();
+        model.setVersion("1.0");
+        Model rawModel = new Model();
+        rawModel.setPomFile(pom);
+        Model rawParent = new Model();
+        rawParent.setPomFile(parent);
+
+        ModelBuildingResult result = mock(ModelBuildingResult.class);
+        doReturn(Arrays.asList("g:a:1.0", "g:parent:1.0"))
+                .when(result).getModelIds();
+        doReturn(model).when(result).getEffectiveModel();
+        doReturn(rawModel).when(result).getRawModel("g:a:1.0");
+        doReturn(rawParent).when(result).getRawModel("g:parent:1.0");
+        doReturn(Collections.<Profile>emptyList())
+                .when(result).getActivePomProfiles(anyString());
+        doReturn(Collections.<Profile>emptyList())
+                .when(result).getActiveExternalProfiles();
+        doReturn(Collections.<ModelProblem>emptyList())
+                .when(result).getProblems();
+
+        delegate = mock(DefaultModelBuilder.class);
+        doReturn(result).when(delegate).build(any(ModelBuildingRequest.class));
+
+        builder = new FossModelBuilder(delegate) {
+            @Override
+            boolean isCacheable(File pomFile) {
+                return true;
+            }
+        };
+    }
+
+    private ModelBuildingRequest newRequest(String property) {
+        Properties properties = new Properties();
+        properties.setProperty("property", property);
+        return new DefaultModelBuildingRequest()
+                .setModelSource(new FileModelSource(pom))
+                .setTwoPhaseBuilding(false)
+                .setSystemProperties(properties);
+    }
+
+    @Test
+    public void testCachedModelIsAnIndependentCopy() throws Exception {
+        Model first = builder.build(newRequest("value")).getEffectiveModel();
+        first.setVersion("changed by the caller");
+
+        Model second = builder.build(newRequest("value")).getEffectiveModel();
+
+        assertEquals("1.0", second.getVersion());
+        assertNotSame(first, second);
+        verify(delegate, times(1)).build(any(ModelBuildingRequest.class));
+    }
+
+    @Test
+    public void testChangedRequestOrParentBuildsAgain() throws Exception {
+        builder.build(newRequest("value"));
+        builder.build(newRequest("other value"));
+        verify(delegate, times(2)).build(any(ModelBuildingRequest.class));
+
+        FileWriter writer = new FileWriter(parent);
+        try {
+            writer.write("<project/>");
+        } finally {
+            writer.close();
+        }
+        builder.build(newRequest("value"));
+        verify(delegate, times(3)).build(any(ModelBuildingRequest.class));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ChecksumVerifierTest {
+
+    // SHA-1 of "content"
+    private static final String CONTENT_SHA1 =
+            "040f06fd774092478d450774f5ba30c5da78acc8";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        File jar = folder.newFile("aid.jar");
+        write(jar, "content");
+        write(new File(jar.getPath() + ".sha1"), CONTENT_SHA1 + "  aid.jar\n");
+
+        ChecksumVerifier verifier =
+                new ChecksumVerifier(ChecksumVerifier.Policy.STRICT, null);
+        assertNull(verifier.verify(jar, jar));
+
+        write(new File(jar.getPath() + ".sha1"), "0000");
+        assertNotNull(verifier.verify(jar, jar));
+    }
+
+    @Test
+    public void testVerifyWithoutChecksums() throws Exception {
+        File jar = folder.newFile("aid.jar");
+        write(jar, "content");
+
+        ChecksumVerifier verifier =
+                new ChecksumVerifier(ChecksumVerifier.Policy.STRICT, null);
+        assertNotNull(verifier.verify(jar, jar));
+    }
+
+    @Test
+    public void testChecksumsAreCachedAcrossInstances() throws Exception {
+        File jar = folder.newFile("aid.jar");
+        write(jar, "content");
+        File cache = new File(folder.getRoot(), "checksums.cache");
+
+        ChecksumVerifier verifier =
+                new ChecksumVerifier(ChecksumVerifier.Policy.WARN, cache);
+        assertEquals(CONTENT_SHA1, verifier.getChecksums(jar).get("SHA-1"));
+        verifier.save();
+        assertTrue(cache.isFile());
+
+        ChecksumVerifier reloaded =
+                new ChecksumVerifier(ChecksumVerifier.Policy.WARN, cache);
+        assertEquals(1, reloaded.size());
+        assertEquals(CONTENT_SHA1, reloaded.getChecksums(jar).get("SHA-1"));
+
+        // a changed file is hashed again
+        write(jar, "changed content");
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertFalse(CONTENT_SHA1.equals(
+                reloaded.getChecksums(jar).get("SHA-1")));
+    }
+
+    @Test
+    public void testPolicyOf() {
+        assertEquals(ChecksumVerifier.Policy.STRICT,
+                ChecksumVerifier.Policy.of("Strict"));
+        try {
+            ChecksumVerifier.Policy.of("paranoid");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("ignore, warn or strict"));
+        }
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws Exception {
+        File jar = folder.newFile("aid.jar");
+        write(jar, "content");
+        File cache = new File(folder.getRoot(), "checksums.cache");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(cache));
+        try {
+            out.writeInt(0x46524543);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeUTF(jar.getAbsolutePath());
+            out.writeLong(jar.length());
+            out.writeLong(jar.lastModified());
+            out.writeInt(-1);
+        } finally {
+            out.close();
+        }
+
+        ChecksumVerifier verifier =
+                new ChecksumVerifier(ChecksumVerifier.Policy.WARN, cache);
+        assertEquals(0, verifier.size());
+        assertEquals(CONTENT_SHA1, verifier.getChecksums(jar).get("SHA-1"));
+        verifier.save();
+        assertEquals(1, new ChecksumVerifier(ChecksumVerifier.Policy.WARN,
+                cache).size());
+    }
+
+    @Test
+    public void testSaveLeavesOutDeletedFiles() throws Exception {
+        File jar = folder.newFile("aid.jar");
+        File deleted = folder.newFile("deleted.jar");
+        File cache = new File(folder.getRoot(), "checksums.cache");
+
+        ChecksumVerifier verifier =
+                new ChecksumVerifier(ChecksumVerifier.Policy.WARN, cache);
+        verifier.getChecksums(jar);
+        verifier.getChecksums(deleted);
+        assertTrue(deleted.delete());
+        verifier.save();
+
+        assertEquals(1, new ChecksumVerifier(ChecksumVerifier.Policy.WARN,
+                cache).size());
+    }
+}
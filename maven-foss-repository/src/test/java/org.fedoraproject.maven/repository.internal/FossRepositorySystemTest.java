@@ -24,22 +24,49 @@
 package org.fedoraproject.maven.repository.internal;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.collection.CollectRequest;
+import org.sonatype.aether.collection.CollectResult;
+import org.sonatype.aether.deployment.DeployRequest;
+import org.sonatype.aether.deployment.DeployResult;
+import org.sonatype.aether.deployment.DeploymentException;
 import org.sonatype.aether.graph.Dependency;
 import org.sonatype.aether.impl.ArtifactResolver;
+import org.sonatype.aether.impl.DependencyCollector;
 import org.sonatype.aether.impl.internal.DefaultRepositorySystem;
+import org.sonatype.aether.impl.internal.SimpleLocalRepositoryManager;
+import org.sonatype.aether.installation.InstallRequest;
+import org.sonatype.aether.installation.InstallResult;
+import org.sonatype.aether.metadata.Metadata;
+import org.sonatype.aether.repository.LocalRepository;
 import org.sonatype.aether.repository.RemoteRepository;
 import org.sonatype.aether.resolution.*;
 import org.sonatype.aether.transfer.MetadataNotFoundException;
 import org.sonatype.aether.util.artifact.DefaultArtifact;
-
+import org.sonatype.aether.util.graph.DefaultDependencyNode;
+import org.sonatype.aether.util.metadata.DefaultMetadata;
+import org.sonatype.aether.util.version.GenericVersionScheme;
+import org.sonatype.aether.version.Version;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.apache.maven.artifact.Artifact.LATEST_VERSION;
 import static org.junit.Assert.*;
@@ -51,6 +78,9 @@ import static org.mockito.Mockito.*;
  */
 public class FossRepositorySystemTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private FossRepositorySystem repositorySystem;
 
     private RemoteRepository fossRepository;
@@ -118,6 +148,61 @@ public class FossRepositorySystemTest {
         assertEquals(successfulResult, actualResult);
     }
 
+    @Test
+    public void testResolveVersionRangeIsCached()
+            throws VersionRangeResolutionException {
+
+        VersionRangeRequest request =
+                new VersionRangeRequest(artifact, null, null);
+
+        VersionRangeResult firstResult =
+                repositorySystem.resolveVersionRange(session, request);
+        firstResult.addVersion(mock(Version.class));
+
+        VersionRangeResult secondResult =
+                repositorySystem.resolveVersionRange(session, request);
+
+        verify(defaultRepositorySystem, times(1)).resolveVersionRange(
+                eq(session), isValidVersionRangeRequest(artifact));
+        assertTrue(secondResult.getVersions().isEmpty());
+    }
+
+    @Test
+    public void testResolveVersionRangeProbesFossRepository()
+            throws Exception {
+
+        File pom = new File(folder.getRoot(), "gid/aid/1.0/aid-1.0.pom");
+        pom.getParentFile().mkdirs();
+        pom.createNewFile();
+
+        System.setProperty("fre.repo", folder.getRoot().toURI().toString());
+        try {
+            repositorySystem = new FossRepositorySystem()
+                    .setDefaultRepositorySystem(defaultRepositorySystem)
+                    .setArtifactResolver(artifactResolver);
+        } finally {
+            System.clearProperty("fre.repo");
+        }
+
+        VersionRangeRequest request =
+                new VersionRangeRequest(artifact, null, null);
+
+        Version version = new GenericVersionScheme().parseVersion("1.0");
+        VersionRangeResult rangeResult =
+                new VersionRangeResult(request).addVersion(version);
+        doReturn(rangeResult).when(defaultRepositorySystem)
+                .resolveVersionRange(eq(session), any(VersionRangeRequest.class));
+
+        VersionRangeResult result =
+                repositorySystem.resolveVersionRange(session, request);
+
+        assertEquals(repositorySystem.getRemoteRepository(),
+                result.getRepository(version));
+        verify(defaultRepositorySystem, never()).readArtifactDescriptor(
+                any(RepositorySystemSession.class),
+                any(ArtifactDescriptorRequest.class));
+    }
+
     @Test
     public void testResolveVersionRangeUnsuccessful()
             throws VersionRangeResolutionException {
@@ -234,6 +319,31 @@ public class FossRepositorySystemTest {
         assertEquals(successfulResult, actualResult);
     }
 
+    @Test
+    public void testResolveArtifactRecordsStageMetrics()
+            throws ArtifactResolutionException {
+
+        ResolutionMetrics metrics = new ResolutionMetrics(true);
+        repositorySystem.setMetrics(metrics);
+
+        ArtifactRequest request = new ArtifactRequest(artifact, null, null);
+        doReturn(new ArtifactResult(request)).when(artifactResolver)
+                .resolveArtifact(eq(session), isValidArtifactRequest(
+                        artifact.setVersion(LATEST_VERSION)));
+
+        repositorySystem.resolveArtifact(session, request);
+        repositorySystem.resolveArtifact(session, request);
+
+        assertEquals(1, metrics.getCount("resolveArtifact",
+                ResolutionStage.EXACT, ResolutionMetrics.Outcome.MISSED));
+        assertEquals(1, metrics.getCount("resolveArtifact",
+                ResolutionStage.EXACT, ResolutionMetrics.Outcome.CACHED_MISS));
+        assertEquals(2, metrics.getCount("resolveArtifact",
+                ResolutionStage.LATEST, ResolutionMetrics.Outcome.FOUND));
+        assertEquals(2, metrics.getCount("resolveArtifact",
+                ResolutionMetrics.WHOLE_CALL, ResolutionMetrics.Outcome.FOUND));
+    }
+
     @Test
     public void testResolveJppArtifactSuccessful()
             throws ArtifactResolutionException {
@@ -260,6 +370,607 @@ public class FossRepositorySystemTest {
         repositorySystem.resolveArtifact(session, request);
     }
 
+    @Test
+    public void testResolveArtifactSkipsKnownMisses()
+            throws ArtifactResolutionException {
+
+        ArtifactRequest request = new ArtifactRequest(artifact, null, "");
+
+        ArtifactResult successfulResult = new ArtifactResult(request);
+        doReturn(successfulResult).when(artifactResolver).resolveArtifact(
+                isJppSession(), isValidArtifactRequest(artifact));
+
+        repositorySystem.resolveArtifact(session, request);
+        ArtifactResult actualResult =
+                repositorySystem.resolveArtifact(session, request);
+
+        assertEquals(successfulResult, actualResult);
+        // the exact and LATEST stages are only tried once
+        verify(artifactResolver, times(1)).resolveArtifact(
+                eq(session), isValidArtifactRequest(artifact));
+        verify(artifactResolver, times(1)).resolveArtifact(
+                eq(session), isValidArtifactRequest(
+                        artifact.setVersion(LATEST_VERSION)));
+
+        NegativeLookupCache<ArtifactResolutionException> misses =
+                repositorySystem.getSessionContext(session).getArtifactMisses();
+        assertEquals(2, misses.getHits());
+    }
+
+    @Test
+    public void testResolveArtifactReusesSessionState()
+            throws ArtifactResolutionException {
+
+        Artifact other = artifact.setVersion("other");
+        doReturn(new ArtifactResult(new ArtifactRequest()))
+                .when(artifactResolver).resolveArtifact(
+                isJppSession(), any(ArtifactRequest.class));
+
+        repositorySystem.resolveArtifact(session,
+                new ArtifactRequest(artifact, null, ""));
+        repositorySystem.resolveArtifact(session,
+                new ArtifactRequest(other, null, ""));
+
+        // once to validate the session, once to derive the JPP session
+        verify(session, times(2)).getDependencyGraphTransformer();
+        ArgumentCaptor<RepositorySystemSession> sessions =
+                ArgumentCaptor.forClass(RepositorySystemSession.class);
+        verify(artifactResolver, atLeastOnce()).resolveArtifact(
+                sessions.capture(), any(ArtifactRequest.class));
+        List<RepositorySystemSession> jppSessions =
+                new ArrayList<RepositorySystemSession>();
+        for (RepositorySystemSession captured : sessions.getAllValues()) {
+            if (captured != session) {
+                jppSessions.add(captured);
+            }
+        }
+        assertEquals(2, jppSessions.size());
+        assertSame(jppSessions.get(0), jppSessions.get(1));
+    }
+
+    @Test
+    public void testResolveArtifactReusesSessionStateWithoutCaching()
+            throws ArtifactResolutionException {
+
+        repositorySystem.setCacheScope("none");
+        testResolveArtifactReusesSessionState();
+    }
+
+    @Test (expected = ArtifactDescriptorException.class)
+    public void testReadArtifactDescriptorRethrowsKnownMiss()
+            throws ArtifactDescriptorException {
+
+        ArtifactDescriptorRequest request =
+                new ArtifactDescriptorRequest(artifact, null, null);
+
+        try {
+            repositorySystem.readArtifactDescriptor(session, request);
+            fail("expected ArtifactDescriptorException");
+        } catch (ArtifactDescriptorException e) {
+            // expected
+        }
+
+        reset(defaultRepositorySystem);
+        // all stages are known to fail, so the delegate is not asked again
+        repositorySystem.readArtifactDescriptor(session, request);
+    }
+
+    @Test
+    public void testCacheScopeNone()
+            throws ArtifactResolutionException {
+
+        repositorySystem.setCacheScope("none");
+
+        ArtifactRequest request = new ArtifactRequest(artifact, null, "");
+
+        ArtifactResult successfulResult = new ArtifactResult(request);
+        doReturn(successfulResult).when(artifactResolver).resolveArtifact(
+                isJppSession(), isValidArtifactRequest(artifact));
+
+        repositorySystem.resolveArtifact(session, request);
+        repositorySystem.resolveArtifact(session, request);
+
+        verify(artifactResolver, times(2)).resolveArtifact(
+                eq(session), isValidArtifactRequest(artifact));
+    }
+
+    @Test
+    public void testReadArtifactDescriptorIsCached()
+            throws ArtifactDescriptorException {
+
+        ArtifactDescriptorRequest request =
+                new ArtifactDescriptorRequest(artifact, null, null);
+
+        ArtifactDescriptorResult successfulResult =
+                new ArtifactDescriptorResult(request);
+        doReturn(successfulResult).when(defaultRepositorySystem)
+                .readArtifactDescriptor(
+                        eq(session), isValidArtifactDescriptorRequest(artifact));
+
+        ArtifactDescriptorResult firstResult =
+                repositorySystem.readArtifactDescriptor(session, request);
+        firstResult.addDependency(new Dependency(artifact, "compile"));
+
+        ArtifactDescriptorResult secondResult =
+                repositorySystem.readArtifactDescriptor(session, request);
+
+        verify(defaultRepositorySystem, times(1)).readArtifactDescriptor(
+                eq(session), isValidArtifactDescriptorRequest(artifact));
+        assertNotSame(firstResult, secondResult);
+        assertTrue(secondResult.getDependencies().isEmpty());
+    }
+
+    @Test
+    public void testCollectDependenciesPrefetchesDescriptors()
+            throws Exception {
+
+        final Artifact child = new DefaultArtifact("gid", "child", "", "ext", "ver");
+        final ArtifactDescriptorRequest request =
+                new ArtifactDescriptorRequest(artifact, null, null);
+        final ArtifactDescriptorRequest childRequest =
+                new ArtifactDescriptorRequest(child, null, null);
+
+        doReturn(new ArtifactDescriptorResult(request)
+                .addDependency(new Dependency(child, "compile")))
+                .when(defaultRepositorySystem).readArtifactDescriptor(
+                        any(RepositorySystemSession.class),
+                        isValidArtifactDescriptorRequest(artifact));
+
+        final List<String> readers = new ArrayList<String>();
+        doAnswer(new Answer<ArtifactDescriptorResult>() {
+            public ArtifactDescriptorResult answer(InvocationOnMock invocation) {
+                readers.add(Thread.currentThread().getName());
+                return new ArtifactDescriptorResult(childRequest);
+            }
+        }).when(defaultRepositorySystem).readArtifactDescriptor(
+                any(RepositorySystemSession.class),
+                isValidArtifactDescriptorRequest(child));
+
+        DependencyCollector dependencyCollector = mock(DependencyCollector.class);
+        doAnswer(new Answer<CollectResult>() {
+            public CollectResult answer(InvocationOnMock invocation)
+                    throws Exception {
+                RepositorySystemSession collectSession =
+                        (RepositorySystemSession) invocation.getArguments()[0];
+                repositorySystem.readArtifactDescriptor(collectSession, request);
+                repositorySystem.readArtifactDescriptor(collectSession, childRequest);
+                return new CollectResult(
+                        (CollectRequest) invocation.getArguments()[1]);
+            }
+        }).when(dependencyCollector).collectDependencies(
+                any(RepositorySystemSession.class), any(CollectRequest.class));
+
+        repositorySystem.setUseJpp(false)
+                .setCollectThreads(2)
+                .setDependencyCollector(dependencyCollector);
+
+        repositorySystem.collectDependencies(session,
+                new CollectRequest(new Dependency(artifact, "compile"), null));
+
+        // read once, by the prefetcher or inline if it had not started yet
+        assertEquals(1, readers.size());
+        // the next collection prefetches again
+        assertTrue(repositorySystem.getSessionContext(session)
+                .getPrefetches().isEmpty());
+    }
+
+    @Test
+    public void testCollectDependenciesDoesNotPrefetchManagedDependencies()
+            throws Exception {
+
+        final Artifact child = new DefaultArtifact("gid", "child", "", "ext", "ver");
+        final Artifact managedChild = child.setVersion("managed");
+        final ArtifactDescriptorRequest request =
+                new ArtifactDescriptorRequest(artifact, null, null);
+        final ArtifactDescriptorRequest managedRequest =
+                new ArtifactDescriptorRequest(managedChild, null, null);
+
+        doReturn(new ArtifactDescriptorResult(request)
+                .addDependency(new Dependency(child, "compile")))
+                .when(defaultRepositorySystem).readArtifactDescriptor(
+                        any(RepositorySystemSession.class),
+                        isValidArtifactDescriptorRequest(artifact));
+        doReturn(new ArtifactDescriptorResult(managedRequest))
+                .when(defaultRepositorySystem).readArtifactDescriptor(
+                        any(RepositorySystemSession.class),
+                        isValidArtifactDescriptorRequest(managedChild));
+
+        DependencyCollector dependencyCollector = mock(DependencyCollector.class);
+        doAnswer(new Answer<CollectResult>() {
+            public CollectResult answer(InvocationOnMock invocation)
+                    throws Exception {
+                RepositorySystemSession collectSession =
+                        (RepositorySystemSession) invocation.getArguments()[0];
+                repositorySystem.readArtifactDescriptor(collectSession, request);
+                repositorySystem.readArtifactDescriptor(collectSession,
+                        managedRequest);
+                return new CollectResult(
+                        (CollectRequest) invocation.getArguments()[1]);
+            }
+        }).when(dependencyCollector).collectDependencies(
+                any(RepositorySystemSession.class), any(CollectRequest.class));
+
+        repositorySystem.setUseJpp(false)
+                .setCollectThreads(2)
+                .setDependencyCollector(dependencyCollector);
+
+        repositorySystem.collectDependencies(session,
+                new CollectRequest(new Dependency(artifact, "compile"), null)
+                        .addManagedDependency(
+                                new Dependency(managedChild, "compile")));
+
+        // the declared version is never asked for
+        verify(defaultRepositorySystem, never()).readArtifactDescriptor(
+                any(RepositorySystemSession.class),
+                isValidArtifactDescriptorRequest(child));
+    }
+
+    @Test
+    public void testCollectDependenciesRecordsProvenanceWithoutCaching()
+            throws Exception {
+
+        repositorySystem.setCacheScope("none");
+        testCollectDependenciesRecordsProvenance();
+    }
+
+    @Test
+    public void testCollectDependenciesRecordsProvenance()
+            throws Exception {
+
+        final ArtifactDescriptorRequest request =
+                new ArtifactDescriptorRequest(artifact, null, null);
+
+        doReturn(new ArtifactDescriptorResult(request))
+                .when(defaultRepositorySystem).readArtifactDescriptor(
+                        isJppSession(), isValidArtifactDescriptorRequest(artifact));
+
+        DependencyCollector dependencyCollector = mock(DependencyCollector.class);
+        doAnswer(new Answer<CollectResult>() {
+            public CollectResult answer(InvocationOnMock invocation)
+                    throws Exception {
+                RepositorySystemSession collectSession =
+                        (RepositorySystemSession) invocation.getArguments()[0];
+                repositorySystem.readArtifactDescriptor(collectSession, request);
+                return new CollectResult(
+                        (CollectRequest) invocation.getArguments()[1])
+                        .setRoot(new DefaultDependencyNode(
+                                new Dependency(artifact, "compile")));
+            }
+        }).when(dependencyCollector).collectDependencies(
+                any(RepositorySystemSession.class), any(CollectRequest.class));
+
+        repositorySystem.setDependencyCollector(dependencyCollector);
+
+        CollectResult result = repositorySystem.collectDependencies(session,
+                new CollectRequest(new Dependency(artifact, "compile"), null));
+
+        // a single traversal, on the FOSS session
+        verify(dependencyCollector, times(1)).collectDependencies(
+                eq(session), any(CollectRequest.class));
+        assertEquals("JPP", result.getRoot().getData().get(
+                FossRepositorySystem.PROVENANCE_KEY));
+    }
+
+    @Test
+    public void testResolveMetadataFromFossRepository()
+            throws Exception {
+
+        File file = new File(folder.getRoot(), "gid/aid/maven-metadata.xml");
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        writer.write("<metadata><groupId>gid</groupId>"
+                + "<artifactId>aid</artifactId></metadata>");
+        writer.close();
+
+        System.setProperty("fre.repo", folder.getRoot().toURI().toString());
+        try {
+            repositorySystem = new FossRepositorySystem()
+                    .setDefaultRepositorySystem(defaultRepositorySystem);
+        } finally {
+            System.clearProperty("fre.repo");
+        }
+        RemoteRepository repository = repositorySystem.getRemoteRepository();
+
+        List<MetadataResult> results = repositorySystem.resolveMetadata(session,
+                Arrays.asList(
+                        new MetadataRequest(new DefaultMetadata("gid", "aid",
+                                "maven-metadata.xml", Metadata.Nature.RELEASE),
+                                repository, null),
+                        new MetadataRequest(new DefaultMetadata("gid", "other",
+                                "maven-metadata.xml", Metadata.Nature.RELEASE),
+                                repository, null)));
+
+        assertTrue(results.get(0).isResolved());
+        assertEquals(file, results.get(0).getMetadata().getFile());
+        assertTrue(results.get(1).isMissing());
+        verify(defaultRepositorySystem, never()).resolveMetadata(
+                any(RepositorySystemSession.class),
+                anyCollectionOf(MetadataRequest.class));
+    }
+
+    @Test
+    public void testResolveMetadataWithoutTransfer()
+            throws Exception {
+
+        File localRepository = folder.newFolder("local");
+        doReturn(new SimpleLocalRepositoryManager(localRepository))
+                .when(session).getLocalRepositoryManager();
+        File file = new File(localRepository, "gid/aid/maven-metadata-local.xml");
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+
+        Metadata metadata = new DefaultMetadata("gid", "aid",
+                "maven-metadata.xml", Metadata.Nature.RELEASE);
+        List<MetadataResult> results = repositorySystem.resolveMetadata(session,
+                Arrays.asList(
+                        new MetadataRequest(metadata, null, null),
+                        new MetadataRequest(metadata, new RemoteRepository(
+                                "central", "default", "http://example.org/"),
+                                null)));
+
+        assertTrue(results.get(0).isResolved());
+        assertEquals(file, results.get(0).getMetadata().getFile());
+        assertTrue(results.get(1).isMissing());
+        verify(defaultRepositorySystem, never()).resolveMetadata(
+                any(RepositorySystemSession.class),
+                anyCollectionOf(MetadataRequest.class));
+    }
+
+    @Test
+    public void testInstall() throws Exception {
+        File localRepository = folder.newFolder("local");
+        doReturn(new SimpleLocalRepositoryManager(localRepository))
+                .when(session).getLocalRepositoryManager();
+        doReturn(new LocalRepository(localRepository))
+                .when(session).getLocalRepository();
+
+        File jar = folder.newFile("aid.jar");
+        FileWriter writer = new FileWriter(jar);
+        writer.write("content");
+        writer.close();
+
+        InstallResult result = repositorySystem.install(session,
+                new InstallRequest().addArtifact(
+                        new DefaultArtifact("gid", "aid", "jar", "1.0")
+                                .setFile(jar)));
+
+        File installed = new File(localRepository, "gid/aid/1.0/aid-1.0.jar");
+        assertEquals(installed,
+                result.getArtifacts().iterator().next().getFile());
+        assertEquals(jar.length(), installed.length());
+
+        // SHA-1 of "content"
+        BufferedReader reader = new BufferedReader(new FileReader(
+                new File(installed.getPath() + ".sha1")));
+        try {
+            assertEquals("040f06fd774092478d450774f5ba30c5da78acc8",
+                    reader.readLine());
+        } finally {
+            reader.close();
+        }
+        assertTrue(new File(localRepository,
+                "gid/aid/maven-metadata-local.xml").isFile());
+    }
+
+    @Test
+    public void testInstallLeavesSnapshotsToMaven() throws Exception {
+        File localRepository = folder.newFolder("local");
+        doReturn(new SimpleLocalRepositoryManager(localRepository))
+                .when(session).getLocalRepositoryManager();
+
+        InstallRequest request = new InstallRequest()
+                .addArtifact(new DefaultArtifact("gid", "aid", "jar", "1.0")
+                        .setFile(folder.newFile("aid.jar")))
+                .addArtifact(new DefaultArtifact("gid", "aid", "jar",
+                        "1.1-SNAPSHOT").setFile(folder.newFile("aid-1.1.jar")));
+        InstallResult delegated = new InstallResult(request);
+        doReturn(delegated).when(defaultRepositorySystem).install(session,
+                request);
+
+        assertSame(delegated, repositorySystem.install(session, request));
+        assertFalse(new File(localRepository, "gid/aid/1.0").exists());
+    }
+
+    @Test
+    public void testInstallForgetsKnownMisses() throws Exception {
+        File localRepository = folder.newFolder("local");
+        doReturn(new SimpleLocalRepositoryManager(localRepository))
+                .when(session).getLocalRepositoryManager();
+        doReturn(new LocalRepository(localRepository))
+                .when(session).getLocalRepository();
+        repositorySystem.setCacheScope("build");
+
+        Artifact jarArtifact = new DefaultArtifact("gid", "aid", "jar", "1.0");
+        ArtifactRequest request = new ArtifactRequest(jarArtifact, null, "");
+        try {
+            repositorySystem.resolveArtifact(session, request);
+            fail("expected ArtifactResolutionException");
+        } catch (ArtifactResolutionException e) {
+            // expected, every stage is now a known miss
+        }
+
+        File jar = folder.newFile("aid.jar");
+        repositorySystem.install(session, new InstallRequest()
+                .addArtifact(jarArtifact.setFile(jar)));
+
+        // an earlier module installed it, so the next module finds it
+        ArtifactResult installed = new ArtifactResult(request);
+        doReturn(installed).when(artifactResolver).resolveArtifact(
+                eq(session), isValidArtifactRequest(jarArtifact));
+        assertSame(installed, repositorySystem.resolveArtifact(session, request));
+        assertEquals(0, repositorySystem.getSessionContext(session)
+                .getArtifactMisses().size());
+    }
+
+    @Test
+    public void testDeployToFileRepository() throws Exception {
+        File remoteRepository = folder.newFolder("remote");
+
+        File pom = folder.newFile("aid.pom");
+        File jar = folder.newFile("aid.jar");
+        FileWriter writer = new FileWriter(jar);
+        writer.write("content");
+        writer.close();
+
+        DeployResult result = repositorySystem.deploy(session,
+                new DeployRequest()
+                        .addArtifact(new DefaultArtifact("gid", "aid", "pom", "1.0")
+                                .setFile(pom))
+                        .addArtifact(new DefaultArtifact("gid", "aid", "jar", "1.0")
+                                .setFile(jar))
+                        .setRepository(new RemoteRepository("test", "default",
+                                remoteRepository.toURI().toString())));
+
+        assertEquals(2, result.getArtifacts().size());
+        File deployed = new File(remoteRepository, "gid/aid/1.0/aid-1.0.jar");
+        assertEquals(jar.length(), deployed.length());
+        assertTrue(new File(deployed.getPath() + ".sha1").isFile());
+        assertTrue(new File(remoteRepository,
+                "gid/aid/1.0/aid-1.0.pom.md5").isFile());
+        assertTrue(new File(remoteRepository,
+                "gid/aid/maven-metadata.xml.sha1").isFile());
+        // nothing staged is left behind
+        assertEquals(6, deployed.getParentFile().list().length);
+        verify(defaultRepositorySystem, never()).deploy(
+                any(RepositorySystemSession.class), any(DeployRequest.class));
+    }
+
+    @Test
+    public void testDeployDiscardsStagedFilesWhenPublishFails()
+            throws Exception {
+
+        File remoteRepository = folder.newFolder("remote");
+        // a directory in the way of the jar
+        File deployed = new File(remoteRepository, "gid/aid/1.0/aid-1.0.jar");
+        assertTrue(new File(deployed, "blocker").mkdirs());
+
+        try {
+            repositorySystem.deploy(session, new DeployRequest()
+                    .addArtifact(new DefaultArtifact("gid", "aid", "pom", "1.0")
+                            .setFile(folder.newFile("aid.pom")))
+                    .addArtifact(new DefaultArtifact("gid", "aid", "jar", "1.0")
+                            .setFile(folder.newFile("aid.jar")))
+                    .setRepository(new RemoteRepository("test", "default",
+                            remoteRepository.toURI().toString())));
+            fail("expected DeploymentException");
+        } catch (DeploymentException e) {
+            // expected
+        }
+
+        // the published pom and its checksums, and the blocking directory
+        assertEquals(4, deployed.getParentFile().list().length);
+    }
+
+    @Test
+    public void testDeployLeavesSnapshotsToMaven() throws Exception {
+        DeployRequest request = new DeployRequest()
+                .addArtifact(new DefaultArtifact("gid", "aid", "jar",
+                        "1.0-SNAPSHOT").setFile(folder.newFile("aid.jar")))
+                .setRepository(new RemoteRepository("test", "default",
+                        folder.newFolder("remote").toURI().toString()));
+        DeployResult delegated = new DeployResult(request);
+        doReturn(delegated).when(defaultRepositorySystem).deploy(session,
+                request);
+
+        assertSame(delegated, repositorySystem.deploy(session, request));
+    }
+
+    @Test
+    public void testResolveArtifactsInParallelKeepsOrder()
+            throws ArtifactResolutionException {
+
+        repositorySystem.setResolveThreads(4);
+
+        List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>();
+        List<ArtifactResult> expectedResults = new ArrayList<ArtifactResult>();
+        for (int i = 0; i < 16; i++) {
+            Artifact versioned = artifact.setVersion("ver" + i);
+            ArtifactRequest request = new ArtifactRequest(versioned, null, "");
+            ArtifactResult result = new ArtifactResult(request);
+            doReturn(result).when(artifactResolver).resolveArtifact(
+                    eq(session), isValidArtifactRequest(versioned));
+            requests.add(request);
+            expectedResults.add(result);
+        }
+
+        List<ArtifactResult> actualResults =
+                repositorySystem.resolveArtifacts(session, requests);
+
+        assertEquals(expectedResults, actualResults);
+    }
+
+    @Test (expected = ArtifactResolutionException.class)
+    public void testResolveArtifactsInParallelUnsuccessful()
+            throws ArtifactResolutionException {
+
+        repositorySystem.setResolveThreads(4);
+
+        ArtifactRequest request = new ArtifactRequest(artifact, null, "");
+        doReturn(new ArtifactResult(request)).when(artifactResolver)
+                .resolveArtifact(eq(session), isValidArtifactRequest(artifact));
+
+        // relying on default artifact resolver behavior to throw exception
+        Artifact missing = artifact.setVersion("missing");
+        repositorySystem.resolveArtifacts(session, Arrays.asList(request,
+                new ArtifactRequest(missing, null, "")));
+    }
+
+    /**
+     * @return the FOSS repository result of a jar whose checksum does not
+     *         match, resolved by a strict repository system
+     */
+    private ArtifactResult mockStrictChecksumMismatch() throws Exception {
+        File jar = new File(folder.getRoot(), "gid/aid/1.0/aid-1.0.jar");
+        jar.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(jar);
+        writer.write("content");
+        writer.close();
+        writer = new FileWriter(jar.getPath() + ".sha1");
+        writer.write("0000000000000000000000000000000000000000");
+        writer.close();
+
+        System.setProperty("fre.repo", folder.getRoot().toURI().toString());
+        System.setProperty("fre.checksums", "strict");
+        System.setProperty("fre.checksums.cache", "none");
+        try {
+            repositorySystem = new FossRepositorySystem()
+                    .setDefaultRepositorySystem(defaultRepositorySystem)
+                    .setArtifactResolver(artifactResolver);
+        } finally {
+            System.clearProperty("fre.repo");
+            System.clearProperty("fre.checksums");
+            System.clearProperty("fre.checksums.cache");
+        }
+
+        Artifact jarArtifact = new DefaultArtifact("gid", "aid", "jar", "1.0");
+        ArtifactResult result = new ArtifactResult(
+                new ArtifactRequest(jarArtifact, null, ""))
+                .setArtifact(jarArtifact.setFile(jar))
+                .setRepository(repositorySystem.getRemoteRepository());
+        doReturn(result).when(artifactResolver).resolveArtifact(
+                any(RepositorySystemSession.class), any(ArtifactRequest.class));
+        return result;
+    }
+
+    @Test (expected = ArtifactResolutionException.class)
+    public void testResolveArtifactFailsOnChecksumMismatchWhenStrict()
+            throws Exception {
+
+        ArtifactResult result = mockStrictChecksumMismatch();
+        repositorySystem.resolveArtifact(session, result.getRequest());
+    }
+
+    @Test
+    public void testResolveArtifactVerifiesOnlyFossRepositoryResults()
+            throws Exception {
+
+        // found in the local repository, which has no checksums to verify
+        ArtifactResult result = mockStrictChecksumMismatch()
+                .setRepository(new LocalRepository(folder.getRoot()));
+        assertSame(result,
+                repositorySystem.resolveArtifact(session, result.getRequest()));
+    }
+
     // custom argument matchers
     // violating DRY here but I don't think we have much of a choice given that
     // requests share no common interface
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonatype.aether.SyncContext;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.metadata.Metadata;
+import org.sonatype.aether.spi.log.NullLogger;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FossSyncContextTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SyncLocks locks = new SyncLocks(16, true);
+
+    private final List<Artifact> artifacts = Collections.<Artifact>singletonList(
+            new DefaultArtifact("gid", "aid", "jar", "1.0"));
+
+    private SyncContext newContext(boolean shared) {
+        return new FossSyncContext(locks, folder.getRoot(), shared,
+                NullLogger.INSTANCE);
+    }
+
+    private CountDownLatch acquireInBackground(final SyncContext context) {
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                context.acquire(artifacts, null);
+                acquired.countDown();
+                context.release();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return acquired;
+    }
+
+    @Test
+    public void testExclusiveContextsExcludeEachOther() throws Exception {
+        SyncContext first = newContext(false);
+        first.acquire(artifacts, null);
+
+        CountDownLatch acquired = acquireInBackground(newContext(false));
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        first.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSharedContextsDoNotExcludeEachOther() throws Exception {
+        SyncContext first = newContext(true);
+        first.acquire(artifacts, null);
+
+        CountDownLatch acquired = acquireInBackground(newContext(true));
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+
+        first.release();
+    }
+
+    @Test
+    public void testFileLockIsReleased() throws Exception {
+        SyncContext context = newContext(false);
+        context.acquire(artifacts, Collections.<Metadata>emptyList());
+
+        File file = new File(folder.getRoot(), "gid_aid_1.0.lock");
+        assertTrue(file.exists());
+
+        context.release();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileLock lock = raf.getChannel().tryLock();
+            assertNotNull(lock);
+            lock.release();
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testExclusiveContextFailsWhileThreadHoldsShared() {
+        SyncContext reader = newContext(true);
+        reader.acquire(artifacts, null);
+        try {
+            newContext(false).acquire(artifacts, null);
+            fail("upgrade of a shared lock");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            reader.release();
+        }
+
+        // nothing is left locked
+        SyncContext writer = newContext(false);
+        writer.acquire(artifacts, null);
+        writer.release();
+    }
+
+    @Test
+    public void testFileLocksAreSharedAcrossInstances() throws Exception {
+        int before = SyncLocks.getFileLockCount();
+        SyncContext first = newContext(true);
+        first.acquire(artifacts, null);
+        // another extension instance in the same JVM
+        SyncContext second = new FossSyncContext(new SyncLocks(16, true),
+                folder.getRoot(), true, NullLogger.INSTANCE);
+        second.acquire(artifacts, null);
+        assertEquals(before + 1, SyncLocks.getFileLockCount());
+
+        second.release();
+        first.release();
+        assertEquals(before, SyncLocks.getFileLockCount());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.fedoraproject.maven.repository.jpp.JavadirWorkspaceReader;
+import org.fedoraproject.maven.repository.jpp.MavenJPackageDepmap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonatype.aether.repository.LocalMetadataRequest;
+import org.sonatype.aether.repository.LocalMetadataResult;
+import org.sonatype.aether.util.metadata.DefaultMetadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class JPPLocalRepositoryManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File repository;
+
+    private JPPLocalRepositoryManager manager;
+
+    @Before
+    public void setup() {
+        repository = new File(folder.getRoot(), "repository");
+        File pomRepository = new File(folder.getRoot(), "poms");
+        File defaultPomRepository = new File(folder.getRoot(), "default_poms");
+        assertTrue(new File(repository, "JPP").mkdirs());
+        assertTrue(pomRepository.mkdirs());
+
+        manager = new JPPLocalRepositoryManager(new JavadirWorkspaceReader(
+                new String[] { repository.getPath() + "/" },
+                new String[] { pomRepository.getPath() + "/" },
+                defaultPomRepository.getPath() + "/"));
+    }
+
+    private LocalMetadataResult find(String artifactId) {
+        return manager.find(null, new LocalMetadataRequest(
+                new DefaultMetadata("JPP", artifactId, "maven-metadata.xml",
+                        org.sonatype.aether.metadata.Metadata.Nature.RELEASE),
+                null, null));
+    }
+
+    @Test
+    public void testSynthesizedMetadata() throws Exception {
+        assertTrue(new File(repository, "JPP/aid.jar").createNewFile());
+
+        File file = find("aid").getFile();
+        assertNotNull(file);
+
+        InputStream in = new FileInputStream(file);
+        try {
+            Metadata metadata = new MetadataXpp3Reader().read(in);
+            assertEquals("JPP", metadata.getGroupId());
+            assertEquals("aid", metadata.getArtifactId());
+            assertFalse(metadata.getVersioning().getVersions().isEmpty());
+        } finally {
+            in.close();
+        }
+
+        // synthesized once
+        assertSame(file, find("aid").getFile());
+    }
+
+    @Test
+    public void testSynthesizedMetadataFollowsDepmapReloads() throws Exception {
+        assertTrue(new File(repository, "JPP/aid.jar").createNewFile());
+        MavenJPackageDepmap depmap = mock(MavenJPackageDepmap.class);
+        doReturn(Collections.emptySet())
+                .when(depmap).getVersions("JPP", "aid");
+        manager = new JPPLocalRepositoryManager(new JavadirWorkspaceReader(
+                new String[] { repository.getPath() + "/" },
+                new String[] { folder.getRoot().getPath() + "/poms/" },
+                folder.getRoot().getPath() + "/default_poms/"), depmap);
+
+        File file = find("aid").getFile();
+        assertSame(file, find("aid").getFile());
+
+        doReturn(1L).when(depmap).getGeneration();
+        File reloaded = find("aid").getFile();
+        assertNotNull(reloaded);
+        assertFalse(file.equals(reloaded));
+        // what was handed out before stays readable
+        assertTrue(file.isFile());
+    }
+
+    @Test
+    public void testConcurrentLookupsSynthesizeOnce() throws Exception {
+        assertTrue(new File(repository, "JPP/aid.jar").createNewFile());
+        MavenJPackageDepmap depmap = mock(MavenJPackageDepmap.class);
+        doReturn(Collections.singleton("1.0"))
+                .when(depmap).getVersions("JPP", "aid");
+        manager = new JPPLocalRepositoryManager(new JavadirWorkspaceReader(
+                new String[] { repository.getPath() + "/" },
+                new String[] { folder.getRoot().getPath() + "/poms/" },
+                folder.getRoot().getPath() + "/default_poms/"), depmap);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<File>> files = new ArrayList<Future<File>>();
+            for (int i = 0; i < 8; i++) {
+                files.add(executor.submit(new Callable<File>() {
+                    public File call() {
+                        return find("aid").getFile();
+                    }
+                }));
+            }
+            File file = files.get(0).get();
+            for (Future<File> other : files) {
+                assertSame(file, other.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        verify(depmap, times(1)).getVersions("JPP", "aid");
+    }
+
+    @Test
+    public void testNoMetadataForUnknownArtifact() {
+        assertNull(find("missing").getFile());
+    }
+
+    @Test
+    public void testPathForLocalMetadata() {
+        assertEquals("gid/aid/maven-metadata-local.xml",
+                manager.getPathForLocalMetadata(new DefaultMetadata("gid",
+                        "aid", "maven-metadata.xml",
+                        org.sonatype.aether.metadata.Metadata.Nature.RELEASE)));
+    }
+}
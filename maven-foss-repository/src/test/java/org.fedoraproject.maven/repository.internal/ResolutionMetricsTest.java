@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResolutionMetricsTest {
+
+    @Test
+    public void testPercentiles() {
+        ResolutionMetrics.Timer timer = new ResolutionMetrics.Timer();
+        for (int i = 0; i < 99; i++) {
+            timer.record(TimeUnit.MICROSECONDS.toNanos(3));
+        }
+        timer.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(100, timer.getCount());
+        // buckets are powers of two microseconds
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(4),
+                timer.getPercentileNanos(50));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(4),
+                timer.getPercentileNanos(99));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(8192),
+                timer.getPercentileNanos(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), timer.getMaxNanos());
+    }
+
+    @Test
+    public void testSummary() {
+        ResolutionMetrics metrics = new ResolutionMetrics(true);
+        metrics.record("resolveArtifact", ResolutionStage.EXACT,
+                ResolutionMetrics.Outcome.MISSED, 1000);
+        metrics.record("resolveArtifact", ResolutionMetrics.WHOLE_CALL,
+                ResolutionMetrics.Outcome.FOUND, 4000);
+
+        assertEquals(Long.valueOf(1), metrics.getCounts().get(
+                "resolveArtifact/EXACT/MISSED"));
+        String summary = metrics.getSummary();
+        assertTrue(summary, summary.contains("EXACT"));
+        assertEquals(3, summary.split("\\r?\\n").length);
+
+        metrics.reset();
+        assertTrue(metrics.isEmpty());
+    }
+
+    @Test
+    public void testDisabled() {
+        ResolutionMetrics metrics = new ResolutionMetrics(false);
+        metrics.record("resolveArtifact", ResolutionMetrics.WHOLE_CALL,
+                ResolutionMetrics.Outcome.FOUND, 4000);
+
+        assertTrue(metrics.isEmpty());
+        assertEquals(0, metrics.getCount("resolveArtifact",
+                ResolutionMetrics.WHOLE_CALL, ResolutionMetrics.Outcome.FOUND));
+    }
+}
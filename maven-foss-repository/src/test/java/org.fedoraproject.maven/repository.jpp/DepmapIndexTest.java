@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DepmapIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        File indexFile = new File(folder.getRoot(), "depmap.index");
+
+        DepmapFragment fragment = new DepmapFragment("/tmp/fragment", 42, 7,
+                Arrays.asList(
+                        new DepmapEntry("gid", "aid", "1.0", "JPP", "jar", "1.0"),
+                        new DepmapEntry("gid", "dropped", "DUMMY_VER",
+                                null, null, null)));
+
+        DepmapIndex.write(indexFile, Arrays.asList(fragment));
+        Map<String, DepmapFragment> fragments = DepmapIndex.read(indexFile);
+
+        assertEquals(1, fragments.size());
+        DepmapFragment actual = fragments.get("/tmp/fragment");
+        assertEquals(42, actual.lastModified);
+        assertEquals(7, actual.length);
+        assertEquals(2, actual.entries.size());
+        assertEquals("aid", actual.entries.get(0).mavenArtifactId);
+        assertEquals("jar", actual.entries.get(0).jppArtifactId);
+        assertFalse(actual.entries.get(0).isDropped());
+        assertTrue(actual.entries.get(1).isDropped());
+    }
+
+    @Test
+    public void testReadCorruptIndex() throws IOException {
+        File indexFile = new File(folder.getRoot(), "depmap.index");
+        FileOutputStream out = new FileOutputStream(indexFile);
+        out.write(new byte[] { 0x46, 0x52, 0x45, 0x44, 0, 0 });
+        out.close();
+
+        assertTrue(DepmapIndex.read(indexFile).isEmpty());
+    }
+
+    @Test
+    public void testReadIndexWithCorruptCounts() throws IOException {
+        File indexFile = new File(folder.getRoot(), "depmap.index");
+        DepmapIndex.write(indexFile, Arrays.asList(new DepmapFragment(
+                "/tmp/fragment", 42, 7, Arrays.asList(new DepmapEntry(
+                        "gid", "aid", "1.0", "JPP", "jar", "1.0")))));
+
+        // fragment count, then the length of the fragment path
+        for (int offset : new int[] { 8, 12 }) {
+            RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+            try {
+                byte[] original = new byte[4];
+                raf.seek(offset);
+                raf.readFully(original);
+                for (int value : new int[] { Integer.MAX_VALUE, -2 }) {
+                    raf.seek(offset);
+                    raf.writeInt(value);
+                    assertTrue(DepmapIndex.read(indexFile).isEmpty());
+                }
+                raf.seek(offset);
+                raf.write(original);
+            } finally {
+                raf.close();
+            }
+        }
+        assertEquals(1, DepmapIndex.read(indexFile).size());
+    }
+
+    @Test
+    public void testReadMissingIndex() {
+        File indexFile = new File(folder.getRoot(), "missing.index");
+
+        assertTrue(DepmapIndex.read(indexFile).isEmpty());
+    }
+
+    @Test
+    public void testUpToDate() throws IOException {
+        File file = folder.newFile("fragment");
+        DepmapFragment fragment = new DepmapFragment(file.getPath(),
+                file.lastModified(), file.length(),
+                Arrays.<DepmapEntry>asList());
+
+        assertTrue(fragment.isUpToDate(file));
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(1);
+        out.close();
+
+        assertFalse(fragment.isUpToDate(file));
+    }
+}
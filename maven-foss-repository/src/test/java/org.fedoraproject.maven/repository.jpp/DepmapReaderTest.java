@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DepmapReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File fragment(String content) throws IOException {
+        File file = folder.newFile("fragment");
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+        return file;
+    }
+
+    @Test
+    public void testReadFragment() throws Exception {
+        File file = fragment(
+                "<dependency>\n" +
+                "  <maven><groupId>gid</groupId><artifactId>aid</artifactId>" +
+                "<version>1.0</version></maven>\n" +
+                "  <jpp><groupId>JPP</groupId><artifactId>jar</artifactId>" +
+                "<version>1.1</version></jpp>\n" +
+                "</dependency>\n" +
+                "<dependency>\n" +
+                "  <maven><groupId>gid</groupId><artifactId>other</artifactId></maven>\n" +
+                "  <jpp><groupId>JPP</groupId><artifactId>other</artifactId></jpp>\n" +
+                "</dependency>\n");
+
+        List<DepmapEntry> entries = DepmapReader.read(file.getPath());
+
+        assertEquals(2, entries.size());
+        DepmapEntry entry = entries.get(0);
+        assertEquals("gid", entry.mavenGroupId);
+        assertEquals("aid", entry.mavenArtifactId);
+        assertEquals("1.0", entry.mavenVersion);
+        assertEquals("JPP", entry.jppGroupId);
+        assertEquals("jar", entry.jppArtifactId);
+        assertEquals("1.1", entry.jppVersion);
+        assertEquals("DUMMY_VER", entries.get(1).mavenVersion);
+        assertEquals("DUMMY_VER", entries.get(1).jppVersion);
+    }
+
+    @Test
+    public void testReadDepmapWithRootElement() throws Exception {
+        File file = fragment(
+                "<dependencies><dependency>\n" +
+                "  <maven><groupId>gid</groupId><artifactId>aid</artifactId></maven>\n" +
+                "  <jpp><groupId>JPP</groupId><artifactId>jar</artifactId></jpp>\n" +
+                "</dependency></dependencies>\n");
+
+        List<DepmapEntry> entries = DepmapReader.read(file.getPath());
+
+        assertEquals(1, entries.size());
+        assertEquals("jar", entries.get(0).jppArtifactId);
+    }
+
+    @Test
+    public void testDropDependencyWithoutJpp() throws Exception {
+        File file = fragment(
+                "<dependency>\n" +
+                "  <maven><groupId>gid</groupId><artifactId>aid</artifactId></maven>\n" +
+                "</dependency>\n");
+
+        List<DepmapEntry> entries = DepmapReader.read(file.getPath());
+
+        assertEquals(1, entries.size());
+        assertTrue(entries.get(0).isDropped());
+    }
+
+    @Test
+    public void testBailOnMissingMaven() throws Exception {
+        File file = fragment(
+                "<dependency>\n" +
+                "  <maven><groupId>gid</groupId><artifactId>aid</artifactId></maven>\n" +
+                "  <jpp><groupId>JPP</groupId><artifactId>jar</artifactId></jpp>\n" +
+                "</dependency>\n" +
+                "<dependency>\n" +
+                "  <jpp><groupId>JPP</groupId><artifactId>jar</artifactId></jpp>\n" +
+                "</dependency>\n" +
+                "<dependency>\n" +
+                "  <maven><groupId>gid</groupId><artifactId>skipped</artifactId></maven>\n" +
+                "  <jpp><groupId>JPP</groupId><artifactId>jar</artifactId></jpp>\n" +
+                "</dependency>\n");
+
+        List<DepmapEntry> entries = DepmapReader.read(file.getPath());
+
+        assertEquals(1, entries.size());
+        assertEquals("aid", entries.get(0).mavenArtifactId);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class JavadirWorkspaceReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File repository;
+
+    private File pomRepository;
+
+    private JavadirWorkspaceReader reader;
+
+    @Before
+    public void setup() {
+        repository = new File(folder.getRoot(), "repository");
+        pomRepository = new File(folder.getRoot(), "poms");
+        File defaultPomRepository = new File(folder.getRoot(), "default_poms");
+        assertTrue(new File(repository, "JPP").mkdirs());
+        assertTrue(pomRepository.mkdirs());
+
+        reader = new JavadirWorkspaceReader(
+                new String[] { repository.getPath() + "/" },
+                new String[] { pomRepository.getPath() + "/" },
+                defaultPomRepository.getPath() + "/");
+    }
+
+    @Test
+    public void testFindArtifact() throws IOException {
+        File jar = new File(repository, "JPP/aid.jar");
+        assertTrue(jar.createNewFile());
+
+        File actual = reader.findArtifact(
+                new DefaultArtifact("JPP", "aid", "jar", "1.0"));
+
+        assertEquals(jar, actual);
+        assertNull(reader.findArtifact(
+                new DefaultArtifact("JPP", "missing", "jar", "1.0")));
+    }
+
+    @Test
+    public void testFindPom() throws IOException {
+        File pom = new File(pomRepository, "JPP-aid.pom");
+        assertTrue(pom.createNewFile());
+
+        File actual = reader.findArtifact(
+                new DefaultArtifact("JPP", "aid", "pom", "1.0"));
+
+        assertEquals(pom, actual);
+    }
+
+    @Test
+    public void testIsJppPom() {
+        assertTrue(JavadirWorkspaceReader.isJppPom(
+                new File("/usr/share/maven-poms/JPP-aid.pom")));
+        assertTrue(JavadirWorkspaceReader.isJppPom(
+                new File("/usr/share/maven2/default_poms/JPP-aid.pom")));
+        assertFalse(JavadirWorkspaceReader.isJppPom(
+                new File(repository, "pom.xml")));
+        assertFalse(JavadirWorkspaceReader.isJppPom(null));
+    }
+
+    @Test
+    public void testDirectoryIndexRescansChangedDirectories()
+            throws IOException {
+
+        DirectoryIndex index = new DirectoryIndex(0);
+        File dir = new File(repository, "JPP");
+        File jar = new File(dir, "aid.jar");
+
+        assertFalse(index.isFile(jar));
+
+        assertTrue(jar.createNewFile());
+        // make sure the modification time changes on coarse file systems
+        dir.setLastModified(dir.lastModified() + 2000);
+
+        assertTrue(index.isFile(jar));
+        assertTrue(index.exists(dir));
+        assertFalse(index.isFile(dir));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository.jpp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MavenJPackageDepmapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<File> depmapFiles = new ArrayList<File>();
+
+    private File indexFile;
+
+    @Before
+    public void setup() {
+        indexFile = new File(folder.getRoot(), "depmap.index");
+    }
+
+    private MavenJPackageDepmap newDepmap() {
+        return newDepmap(true);
+    }
+
+    private MavenJPackageDepmap newDepmap(boolean processVersions) {
+        final MavenJPackageDepmap depmap =
+                new MavenJPackageDepmap(indexFile, processVersions) {
+            @Override
+            List<File> getDepmapFiles() {
+                return depmapFiles;
+            }
+        };
+        depmap.reload();
+        return depmap;
+    }
+
+    private File fragment(String name, String artifactId, String jppArtifactId)
+            throws IOException {
+
+        File file = new File(folder.getRoot(), name);
+        FileWriter writer = new FileWriter(file);
+        writer.write("<dependency>" +
+                "<maven><groupId>gid</groupId><artifactId>" + artifactId +
+                "</artifactId></maven>" +
+                "<jpp><groupId>JPP</groupId><artifactId>" + jppArtifactId +
+                "</artifactId></jpp>" +
+                "</dependency>\n");
+        writer.close();
+        return file;
+    }
+
+    @Test
+    public void testLaterFilesOverride() throws IOException {
+        depmapFiles.add(fragment("a", "aid", "first"));
+        depmapFiles.add(fragment("b", "aid", "second"));
+
+        JppMapping mapping = newDepmap().getMapping("gid", "aid", "1.0");
+
+        assertEquals("JPP", mapping.getGroupId());
+        assertEquals("second", mapping.getArtifactId());
+    }
+
+    @Test
+    public void testUnmapped() throws IOException {
+        depmapFiles.add(fragment("a", "aid", "jar"));
+
+        MavenJPackageDepmap depmap = newDepmap();
+
+        assertNull(depmap.getMapping("gid", "other", "1.0"));
+        assertEquals("other",
+                depmap.getMappedInfo("gid", "other", "1.0").get("artifact"));
+    }
+
+    @Test
+    public void testReloadPicksUpChanges() throws IOException {
+        depmapFiles.add(fragment("a", "aid", "jar"));
+        MavenJPackageDepmap depmap = newDepmap();
+
+        assertFalse(depmap.reload());
+
+        depmapFiles.add(fragment("b", "other", "other-jar"));
+        assertTrue(depmap.reload());
+        assertEquals("other-jar",
+                depmap.getMapping("gid", "other", null).getArtifactId());
+
+        depmapFiles.remove(1);
+        assertTrue(depmap.reload());
+        assertNull(depmap.getMapping("gid", "other", null));
+    }
+
+    @Test
+    public void testIndexIsReused() throws IOException {
+        File file = fragment("a", "aid", "jar");
+        file.setLastModified(1000000000000L);
+        depmapFiles.add(file);
+        newDepmap();
+
+        // same size and modification time, so the index is trusted
+        fragment("a", "aid", "xyz");
+        file.setLastModified(1000000000000L);
+
+        assertEquals("jar",
+                newDepmap().getMapping("gid", "aid", null).getArtifactId());
+
+        file.setLastModified(1100000000000L);
+
+        assertEquals("xyz",
+                newDepmap().getMapping("gid", "aid", null).getArtifactId());
+    }
+
+    private File compatFragment() throws IOException {
+        File file = new File(folder.getRoot(), "compat");
+        FileWriter writer = new FileWriter(file);
+        writer.write("<dependency>" +
+                "<maven><groupId>gid</groupId><artifactId>aid</artifactId>" +
+                "</maven>" +
+                "<jpp><groupId>JPP</groupId><artifactId>aid</artifactId>" +
+                "</jpp></dependency>\n" +
+                "<dependency>" +
+                "<maven><groupId>gid</groupId><artifactId>aid</artifactId>" +
+                "<version>1.0</version></maven>" +
+                "<jpp><groupId>JPP</groupId><artifactId>aid1</artifactId>" +
+                "</jpp></dependency>\n");
+        writer.close();
+        return file;
+    }
+
+    @Test
+    public void testVersionedMappings() throws IOException {
+        depmapFiles.add(compatFragment());
+
+        MavenJPackageDepmap depmap = newDepmap();
+
+        assertEquals("aid1",
+                depmap.getMapping("gid", "aid", "1.0").getArtifactId());
+        assertTrue(depmap.hasVersionedMapping("gid", "aid", "1.0"));
+        // the versionless mapping is the default
+        assertEquals("aid",
+                depmap.getMapping("gid", "aid", "2.0").getArtifactId());
+        assertFalse(depmap.hasVersionedMapping("gid", "aid", "2.0"));
+    }
+
+    @Test
+    public void testLastListedMappingWinsWhenVersionsAreIgnored()
+            throws IOException {
+
+        depmapFiles.add(compatFragment());
+
+        MavenJPackageDepmap depmap = newDepmap(false);
+
+        // the versioned mapping is listed after the versionless one
+        assertEquals("aid1",
+                depmap.getMapping("gid", "aid", "1.0").getArtifactId());
+        assertEquals("aid1",
+                depmap.getMapping("gid", "aid", "2.0").getArtifactId());
+        assertFalse(depmap.hasVersionedMapping("gid", "aid", "1.0"));
+    }
+}
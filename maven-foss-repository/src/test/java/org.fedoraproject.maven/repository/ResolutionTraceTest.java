@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.fedoraproject.maven.repository;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ResolutionTraceTest {
+
+    @Test
+    public void testEventsAreWrittenAsJsonLines() {
+        StringWriter out = new StringWriter();
+        ResolutionTrace trace = new ResolutionTrace(out);
+        trace.add("miss", "resolveArtifact", "EXACT", "g:a:jar:1", 1500);
+        trace.add("message", null, null, "a \"quoted\"\tvalue\n", -1);
+        trace.close();
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        String thread = Thread.currentThread().getName();
+        assertTrue(lines[0], lines[0].matches("\\{\"time\":\\d+,"
+                + "\"thread\":\"" + thread + "\",\"event\":\"miss\","
+                + "\"entryPoint\":\"resolveArtifact\",\"stage\":\"EXACT\","
+                + "\"subject\":\"g:a:jar:1\",\"nanos\":1500\\}"));
+        assertTrue(lines[1], lines[1].endsWith(",\"event\":\"message\","
+                + "\"subject\":\"a \\\"quoted\\\"\\tvalue\\n\"}"));
+    }
+
+    @Test
+    public void testEventsAfterCloseAreDropped() {
+        StringWriter out = new StringWriter();
+        ResolutionTrace trace = new ResolutionTrace(out);
+        trace.close();
+        trace.add("miss", "resolveArtifact", "EXACT", "g:a:jar:1", 1500);
+
+        assertEquals(1, trace.getDropped());
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void testEventsAreDroppedOnceTheWriterFails() throws Exception {
+        final AtomicReference<Thread> writer = new AtomicReference<Thread>();
+        ResolutionTrace trace = new ResolutionTrace(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length)
+                    throws IOException {
+                writer.set(Thread.currentThread());
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        trace.add("miss", "resolveArtifact", "EXACT", "g:a:jar:1", 1500);
+        while (writer.get() == null) {
+            Thread.sleep(10);
+        }
+        writer.get().join(5000);
+
+        trace.add("miss", "resolveArtifact", "EXACT", "g:a:jar:2", 1500);
+        trace.close();
+        assertEquals(1, trace.getDropped());
+    }
+}